@@ -0,0 +1,318 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.connector;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.internal.apps.license.manager.exception.LicenseManagerConfigurationException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads a file from the FTP server in ranges of a fixed size, over several SFTP channels at once. The ranges
+ * are written in place into a file preallocated to the size of the remote file, and each completed range is
+ * recorded in a sidecar file. A download which fails part way is resumed from the recorded ranges, as long as the
+ * size and the modification time of the remote file are unchanged.
+ */
+class ChunkedSftpDownload {
+
+    private static final Logger log = LoggerFactory.getLogger(ChunkedSftpDownload.class);
+    private static final String PARTIAL_FILE_SUFFIX = ".part";
+    private static final String PARTS_FILE_SUFFIX = ".parts";
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final FtpConnectionManager ftpConnectionManager;
+    private final String remotePath;
+    private final File target;
+    private final File partialFile;
+    private final File partsFile;
+    private final long chunkSize;
+    private final int channels;
+
+    /**
+     * @param ftpConnectionManager connection to the FTP server, whose pool the additional channels are leased from
+     * @param remotePath           path of the file on the FTP server
+     * @param target               file to download to
+     * @param chunkSize            size of a range in bytes
+     * @param channels             number of SFTP channels to download over
+     */
+    ChunkedSftpDownload(FtpConnectionManager ftpConnectionManager, String remotePath, File target, long chunkSize,
+                        int channels) {
+
+        this.ftpConnectionManager = ftpConnectionManager;
+        this.remotePath = remotePath;
+        this.target = target;
+        this.partialFile = new File(target.getPath() + PARTIAL_FILE_SUFFIX);
+        this.partsFile = new File(target.getPath() + PARTS_FILE_SUFFIX);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.channels = Math.max(1, channels);
+    }
+
+    /**
+     * Download the file, resuming an earlier attempt if possible.
+     *
+     * @throws LicenseManagerConfigurationException if the download fails. The completed ranges are kept so that
+     *                                              the next attempt resumes from them.
+     */
+    void download() throws LicenseManagerConfigurationException {
+
+        long startTime = System.nanoTime();
+        SftpATTRS attributes = stat();
+        long size = attributes.getSize();
+        String header = size + " " + attributes.getMTime() + " " + chunkSize;
+        int chunkCount = (int) ((size + chunkSize - 1) / chunkSize);
+
+        BitSet completedChunks = readCompletedChunks(header);
+        try {
+            if (completedChunks == null) {
+                completedChunks = new BitSet(chunkCount);
+                try (RandomAccessFile file = new RandomAccessFile(partialFile, "rw")) {
+                    file.setLength(size);
+                }
+                Files.write(partsFile.toPath(), (header + "\n").getBytes(StandardCharsets.UTF_8));
+            } else {
+                log.info("Resuming the download of " + remotePath + " with " + completedChunks.cardinality() +
+                        " of " + chunkCount + " ranges already downloaded");
+            }
+
+            Queue<Integer> pendingChunks = new ConcurrentLinkedQueue<>();
+            for (int chunk = completedChunks.nextClearBit(0); chunk < chunkCount;
+                 chunk = completedChunks.nextClearBit(chunk + 1)) {
+                pendingChunks.add(chunk);
+            }
+            downloadChunks(pendingChunks, completedChunks, size);
+
+            // Never move a file with a range missing into place, it would hold zeros where the range belongs.
+            int missingChunk = completedChunks.nextClearBit(0);
+            if (missingChunk < chunkCount) {
+                throw new IOException("The range " + missingChunk + " of " + remotePath + " was not downloaded, " +
+                        completedChunks.cardinality() + " of " + chunkCount + " ranges are complete");
+            }
+            Files.move(partialFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.deleteIfExists(partsFile.toPath());
+        } catch (IOException e) {
+            // The channel may have been left part way through a range.
+            ftpConnectionManager.markBroken();
+            throw new LicenseManagerConfigurationException("Failed to download " + remotePath, e);
+        }
+
+        long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        log.info("Downloaded " + size + " bytes of " + remotePath + " in " + elapsedMillis + " ms over " +
+                Math.min(channels, Math.max(1, chunkCount)) + " channel(s) (" + (size * 1000 / elapsedMillis) +
+                " bytes/s)");
+    }
+
+    private SftpATTRS stat() throws LicenseManagerConfigurationException {
+
+        try {
+            return ftpConnectionManager.getSftpChannel().stat(remotePath);
+        } catch (SftpException e) {
+            ftpConnectionManager.markBroken();
+            throw new LicenseManagerConfigurationException("Failed to read the attributes of " + remotePath, e);
+        }
+    }
+
+    /**
+     * Read the ranges completed by an earlier attempt to download the same remote file.
+     *
+     * @param header size and modification time of the remote file and the size of a range
+     * @return completed ranges, or null if there is nothing to resume from
+     */
+    private BitSet readCompletedChunks(String header) {
+
+        if (!partsFile.isFile() || !partialFile.isFile()) {
+            return null;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                Files.newInputStream(partsFile.toPath()), StandardCharsets.UTF_8))) {
+            if (!header.equals(reader.readLine())) {
+                log.info("The remote file " + remotePath + " has changed since the last attempt, downloading " +
+                        "it again");
+                return null;
+            }
+            BitSet completedChunks = new BitSet();
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                // A line cut short by a crash is ignored, the range is downloaded again.
+                if (line.endsWith(";")) {
+                    completedChunks.set(Integer.parseInt(line.substring(0, line.length() - 1)));
+                }
+            }
+            return completedChunks;
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Failed to read " + partsFile.getAbsolutePath() + ", downloading " + remotePath + " again");
+            return null;
+        }
+    }
+
+    /**
+     * Download the pending ranges over the workers. A helper worker which loses its channel returns its range to
+     * the queue, so the ranges left once the workers are done are downloaded over the channel of the connection
+     * manager.
+     */
+    private void downloadChunks(Queue<Integer> pendingChunks, BitSet completedChunks, long size) throws IOException,
+            LicenseManagerConfigurationException {
+
+        int workers = Math.min(channels, pendingChunks.size());
+        if (workers == 0) {
+            return;
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(workers);
+        List<Future<Void>> results = new ArrayList<>();
+        try (FileChannel file = FileChannel.open(partialFile.toPath(), StandardOpenOption.WRITE);
+             OutputStream parts = new FileOutputStream(partsFile, true)) {
+            for (int i = 0; i < workers; i++) {
+                boolean primary = (i == 0);
+                results.add(executorService.submit(() -> {
+                    downloadPendingChunks(primary, pendingChunks, completedChunks, size, file, parts);
+                    return null;
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+            if (!pendingChunks.isEmpty()) {
+                downloadPendingChunks(true, pendingChunks, completedChunks, size, file, parts);
+            }
+            file.force(true);
+        } catch (ExecutionException e) {
+            pendingChunks.clear();
+            if (e.getCause() instanceof LicenseManagerConfigurationException) {
+                throw (LicenseManagerConfigurationException) e.getCause();
+            }
+            throw new IOException("Failed to download a range of " + remotePath, e.getCause());
+        } catch (InterruptedException e) {
+            pendingChunks.clear();
+            Thread.currentThread().interrupt();
+            throw new IOException("Downloading " + remotePath + " was interrupted", e);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Download ranges until none is left. The primary worker uses the channel leased by the connection manager and
+     * the other workers lease their own channels, if the pool has any to spare, so the download never waits on the
+     * pool for a channel held by itself. Each completed range is recorded in the sidecar file and in the given set.
+     */
+    private void downloadPendingChunks(boolean primary, Queue<Integer> pendingChunks, BitSet completedChunks,
+                                       long size, FileChannel file, OutputStream parts)
+            throws IOException, LicenseManagerConfigurationException {
+
+        SftpSessionPool sftpSessionPool = ftpConnectionManager.getSftpSessionPool();
+        ChannelSftp channel = primary ? ftpConnectionManager.getSftpChannel() : sftpSessionPool.tryLease();
+        if (channel == null) {
+            return;
+        }
+        boolean succeeded = false;
+        try {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            for (Integer chunk = pendingChunks.poll(); chunk != null; chunk = pendingChunks.poll()) {
+                for (int attempt = 1; ; attempt++) {
+                    try {
+                        downloadChunk(channel, chunk, size, file, buffer);
+                        break;
+                    } catch (SftpException | IOException e) {
+                        if (attempt >= MAX_ATTEMPTS) {
+                            throw new IOException("Failed to download the range " + chunk + " of " + remotePath +
+                                    " after " + attempt + " attempts", e);
+                        }
+                        log.warn("Failed to download the range " + chunk + " of " + remotePath + ", retrying. " +
+                                e.getMessage());
+                        if (primary) {
+                            channel = ftpConnectionManager.renewSftpChannel();
+                            continue;
+                        }
+                        sftpSessionPool.release(channel, true);
+                        channel = sftpSessionPool.tryLease();
+                        if (channel == null) {
+                            // Leave the range to the channel of the connection manager, once the workers are done.
+                            pendingChunks.add(chunk);
+                            return;
+                        }
+                    }
+                }
+                synchronized (parts) {
+                    parts.write((chunk + ";\n").getBytes(StandardCharsets.UTF_8));
+                    parts.flush();
+                    completedChunks.set(chunk);
+                }
+            }
+            succeeded = true;
+        } finally {
+            if (!primary && channel != null) {
+                // A channel whose last range failed is not returned to the pool as a healthy one.
+                sftpSessionPool.release(channel, !succeeded);
+            }
+        }
+    }
+
+    /**
+     * Download a single range into its place in the file.
+     */
+    private void downloadChunk(ChannelSftp channel, int chunk, long size, FileChannel file, byte[] buffer)
+            throws SftpException, IOException {
+
+        long start = chunk * chunkSize;
+        long length = Math.min(chunkSize, size - start);
+        try (InputStream in = channel.get(remotePath, null, start)) {
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                int len = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (len < 0) {
+                    throw new IOException("Unexpected end of " + remotePath + " at " + position);
+                }
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, len);
+                while (byteBuffer.hasRemaining()) {
+                    position += file.write(byteBuffer, position);
+                }
+                remaining -= len;
+            }
+        }
+    }
+}
@@ -21,88 +21,153 @@
 package org.wso2.internal.apps.license.manager.connector;
 
 import com.jcraft.jsch.ChannelSftp;
-import com.jcraft.jsch.JSch;
-import com.jcraft.jsch.JSchException;
-import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
 import com.jcraft.jsch.SftpException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wso2.internal.apps.license.manager.exception.LicenseManagerConfigurationException;
+import org.wso2.internal.apps.license.manager.model.UploadedPack;
 import org.wso2.internal.apps.license.manager.util.Constants;
 import org.wso2.msf4j.util.SystemVariableUtil;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
 
 /**
- * Create a connection with the FTP server and execute functions.
+ * A channel to the FTP server leased from the pool of SFTP sessions, to execute functions. The channel is not shared
+ * with any other task until the connection manager is closed and the channel goes back to the pool.
  */
-public class FtpConnectionManager {
+public class FtpConnectionManager implements Closeable {
 
     private static final Logger log = LoggerFactory.getLogger(FtpConnectionManager.class);
-    private static FtpConnectionManager ftpConnectionManager = null;
-    private static Session session;
-    private static ChannelSftp sftpChannel;
+    private final SftpSessionPool sftpSessionPool;
+    private ChannelSftp sftpChannel;
+    private boolean broken = false;
 
-    private FtpConnectionManager() throws LicenseManagerConfigurationException {
+    private FtpConnectionManager(SftpSessionPool sftpSessionPool) throws LicenseManagerConfigurationException {
 
-        String ftpHost = SystemVariableUtil.getValue(Constants.FTP_HOST, null);
-        int ftpPort = Integer.parseInt(SystemVariableUtil.getValue(Constants.FTP_PORT, null));
-        String ftpUsername = SystemVariableUtil.getValue(Constants.FTP_USERNAME, null);
-        String ftpPassword = SystemVariableUtil.getValue(Constants.FTP_PASSWORD, null);
-        JSch jsch = new JSch();
+        this.sftpSessionPool = sftpSessionPool;
+        this.sftpChannel = sftpSessionPool.lease();
+    }
 
-        // Initiate SFTP connection.
-        try {
-            session = jsch.getSession(ftpUsername, ftpHost, ftpPort);
-            session.setPassword(ftpPassword);
-            java.util.Properties config = new java.util.Properties();
-            config.put("StrictHostKeyChecking", "no");
-            session.setConfig(config);
-            session.connect();
-
-            sftpChannel = (ChannelSftp) session.openChannel("sftp");
-            sftpChannel.connect(600000);
-        } catch (JSchException e) {
-            throw new LicenseManagerConfigurationException("Failed to initiate a connection with FTP server", e);
-        }
+    /**
+     * Lease a channel to the FTP server. The connection manager must be closed to return the channel to the pool.
+     *
+     * @return connection manager holding the leased channel
+     * @throws LicenseManagerConfigurationException if no channel can be leased
+     */
+    public static FtpConnectionManager getFtpConnectionManager() throws LicenseManagerConfigurationException {
+
+        return new FtpConnectionManager(SftpSessionPool.getSftpSessionPool());
     }
 
-    public static synchronized FtpConnectionManager getFtpConnectionManager()
-            throws LicenseManagerConfigurationException {
-
-        if (ftpConnectionManager == null || !session.isConnected()) {
-            ftpConnectionManager = new FtpConnectionManager();
-        } else {
-            closeSftpChannel();
-            try {
-                sftpChannel = (ChannelSftp) session.openChannel("sftp");
-                sftpChannel.connect();
-            } catch (JSchException e) {
-                throw new LicenseManagerConfigurationException("Failed to initiate a connection with FTP server", e);
-            }
-        }
-        return ftpConnectionManager;
+    /**
+     * @return the pool the channel is leased from
+     */
+    SftpSessionPool getSftpSessionPool() {
+
+        return sftpSessionPool;
+    }
+
+    /**
+     * @return the leased channel
+     */
+    ChannelSftp getSftpChannel() {
+
+        return sftpChannel;
+    }
+
+    /**
+     * Give up the leased channel, which has failed, and lease another one in its place.
+     *
+     * @return the newly leased channel
+     * @throws LicenseManagerConfigurationException if no channel can be leased
+     */
+    ChannelSftp renewSftpChannel() throws LicenseManagerConfigurationException {
 
+        sftpSessionPool.release(sftpChannel, true);
+        sftpChannel = null;
+        sftpChannel = sftpSessionPool.lease();
+        broken = false;
+        return sftpChannel;
     }
 
-    public static void closeSftpChannel() {
+    /**
+     * Mark the leased channel as failed, so that it is discarded instead of going back to the pool.
+     */
+    void markBroken() {
+
+        broken = true;
+    }
+
+    /**
+     * Return the channel to the pool.
+     */
+    @Override
+    public void close() {
 
         if (sftpChannel != null) {
-            sftpChannel.exit();
+            sftpSessionPool.release(sftpChannel, broken);
+            sftpChannel = null;
         }
     }
 
     public void downloadFileFromFtpServer(String packName) throws LicenseManagerConfigurationException {
 
-        String ftpFilePath = SystemVariableUtil.getValue(Constants.FTP_FILE_LOCATION, null);
         String pathToStorage = SystemVariableUtil.getValue(Constants.FILE_DOWNLOAD_PATH, null);
+        downloadFileFromFtpServer(packName, new File(pathToStorage + packName));
+    }
+
+    /**
+     * Download a pack to the given file.
+     *
+     * @param packName name of the pack
+     * @param target   file to download the pack to
+     * @throws LicenseManagerConfigurationException if the download fails
+     */
+    public void downloadFileFromFtpServer(String packName, File target) throws LicenseManagerConfigurationException {
+
+        String ftpFilePath = SystemVariableUtil.getValue(Constants.FTP_FILE_LOCATION, null);
+        String downloadMode = SystemVariableUtil.getValue(Constants.FTP_DOWNLOAD_MODE,
+                Constants.FTP_DOWNLOAD_MODE_SINGLE);
+        if (Constants.FTP_DOWNLOAD_MODE_CHUNKED.equals(downloadMode)) {
+            // Download ranges of the pack over several channels, resuming an earlier attempt if there is one.
+            long chunkSize = Long.parseLong(SystemVariableUtil.getValue(Constants.FTP_DOWNLOAD_CHUNK_SIZE,
+                    String.valueOf(Constants.DEFAULT_FTP_DOWNLOAD_CHUNK_SIZE)));
+            int channels = Integer.parseInt(SystemVariableUtil.getValue(Constants.FTP_DOWNLOAD_CHANNELS,
+                    String.valueOf(Constants.DEFAULT_FTP_DOWNLOAD_CHANNELS)));
+            new ChunkedSftpDownload(this, ftpFilePath + packName, target, chunkSize, channels).download();
+            return;
+        }
         try {
-            sftpChannel.get(ftpFilePath + packName, pathToStorage);
+            sftpChannel.get(ftpFilePath + packName, target.getPath());
             if (log.isDebugEnabled()) {
-                log.debug("The file " + packName + " is successfully downloaded to location " + pathToStorage);
+                log.debug("The file " + packName + " is successfully downloaded to location " + target.getPath());
             }
         } catch (SftpException e) {
+            broken = true;
+            throw new LicenseManagerConfigurationException("Failed to download file from FTP server", e);
+        }
+    }
+
+    /**
+     * Open a stream to read a pack from the FTP server. The stream must be closed before the channel is closed.
+     *
+     * @param packName name of the pack
+     * @return stream of the pack
+     * @throws LicenseManagerConfigurationException if the pack cannot be opened
+     */
+    public InputStream openFileFromFtpServer(String packName) throws LicenseManagerConfigurationException {
+
+        String ftpFilePath = SystemVariableUtil.getValue(Constants.FTP_FILE_LOCATION, null);
+        try {
+            return sftpChannel.get(ftpFilePath + packName);
+        } catch (SftpException e) {
+            broken = true;
             throw new LicenseManagerConfigurationException("Failed to download file from FTP server", e);
         }
     }
@@ -124,11 +189,56 @@ public class FtpConnectionManager {
             }
             return listOfPacks;
         } catch (SftpException e) {
-            sftpChannel.exit();
+            broken = true;
+            throw new LicenseManagerConfigurationException("Failed to get the list of files from FTP server", e);
+        }
+    }
+
+    /**
+     * List the packs in the upload location along with their size and modification time.
+     *
+     * @return packs in the upload location
+     * @throws LicenseManagerConfigurationException if the listing fails
+     */
+    public List<UploadedPack> listPacksInFtpServer() throws LicenseManagerConfigurationException {
+
+        String ftpFilePath = SystemVariableUtil.getValue(Constants.FTP_FILE_LOCATION, null);
+        List<UploadedPack> packs = new ArrayList<>();
+        try {
+            for (Object aFileListVector : sftpChannel.ls(ftpFilePath)) {
+                ChannelSftp.LsEntry entry = (ChannelSftp.LsEntry) aFileListVector;
+                if (entry.getFilename().endsWith(".zip")) {
+                    packs.add(new UploadedPack(entry.getFilename(), entry.getAttrs().getSize(),
+                            entry.getAttrs().getMTime()));
+                }
+            }
+            return packs;
+        } catch (SftpException e) {
+            broken = true;
             throw new LicenseManagerConfigurationException("Failed to get the list of files from FTP server", e);
         }
     }
 
+    /**
+     * Read the size and the modification time of a pack.
+     *
+     * @param packName name of the pack
+     * @return the pack as listed on the server
+     * @throws LicenseManagerConfigurationException if the pack cannot be found
+     */
+    public UploadedPack statFileInFtpServer(String packName) throws LicenseManagerConfigurationException {
+
+        String ftpFilePath = SystemVariableUtil.getValue(Constants.FTP_FILE_LOCATION, null);
+        try {
+            SftpATTRS attributes = sftpChannel.stat(ftpFilePath + packName);
+            return new UploadedPack(packName, attributes.getSize(), attributes.getMTime());
+        } catch (SftpException e) {
+            broken = true;
+            throw new LicenseManagerConfigurationException("Failed to read the attributes of " + packName +
+                    " from FTP server", e);
+        }
+    }
+
     public void deleteFileFromFtpServer(String fileName) throws LicenseManagerConfigurationException {
 
         String ftpFilePath = SystemVariableUtil.getValue(Constants.FTP_FILE_LOCATION, null);
@@ -140,7 +250,7 @@ public class FtpConnectionManager {
                 log.debug("The file " + fileName + ".zip" + " is removed from the FTP server");
             }
         } catch (SftpException e) {
-            sftpChannel.exit();
+            broken = true;
             throw new LicenseManagerConfigurationException("Failed to delete file from FTP server", e);
         }
     }
@@ -0,0 +1,132 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.connector;
+
+import org.wso2.internal.apps.license.manager.exception.LicenseManagerConfigurationException;
+import org.wso2.internal.apps.license.manager.model.UploadedPack;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packs held in memory, added with {@link #addPack(String, byte[])}. Useful to run and measure the extraction
+ * without a server.
+ */
+public class InMemoryPackSource implements PackSource {
+
+    private final Map<String, InMemoryPack> packs = new ConcurrentHashMap<>();
+
+    /**
+     * Add a pack, replacing any pack of the same name.
+     *
+     * @param packName name of the pack
+     * @param content  content of the zip file of the pack
+     */
+    public void addPack(String packName, byte[] content) {
+
+        packs.put(packName, new InMemoryPack(content, TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis())));
+    }
+
+    @Override
+    public List<UploadedPack> listPacks() {
+
+        List<UploadedPack> uploadedPacks = new ArrayList<>();
+        packs.forEach((packName, pack) -> {
+            if (packName.endsWith(".zip")) {
+                uploadedPacks.add(new UploadedPack(packName, pack.content.length, pack.lastModified));
+            }
+        });
+        return uploadedPacks;
+    }
+
+    @Override
+    public UploadedPack getPack(String packName) throws LicenseManagerConfigurationException {
+
+        InMemoryPack pack = get(packName);
+        return new UploadedPack(packName, pack.content.length, pack.lastModified);
+    }
+
+    @Override
+    public String getLocation(String packName) {
+
+        return "memory:" + packName;
+    }
+
+    @Override
+    public File getLocalFile(String packName) {
+
+        return null;
+    }
+
+    @Override
+    public void download(String packName, File target) throws LicenseManagerConfigurationException {
+
+        try {
+            Files.write(target.toPath(), get(packName).content);
+        } catch (IOException e) {
+            throw new LicenseManagerConfigurationException("Failed to write the pack " + packName, e);
+        }
+    }
+
+    @Override
+    public InputStream open(String packName) throws LicenseManagerConfigurationException {
+
+        return new ByteArrayInputStream(get(packName).content);
+    }
+
+    @Override
+    public void delete(String packName) {
+
+        packs.remove(packName.endsWith(".zip") ? packName : packName + ".zip");
+    }
+
+    private InMemoryPack get(String packName) throws LicenseManagerConfigurationException {
+
+        InMemoryPack pack = packs.get(packName);
+        if (pack == null) {
+            throw new LicenseManagerConfigurationException("The pack " + packName + " is not found");
+        }
+        return pack;
+    }
+
+    /**
+     * Content of a pack along with the time it was added.
+     */
+    private static class InMemoryPack {
+
+        private final byte[] content;
+        private final long lastModified;
+
+        InMemoryPack(byte[] content, long lastModified) {
+
+            this.content = content;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.connector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.internal.apps.license.manager.exception.LicenseManagerConfigurationException;
+import org.wso2.internal.apps.license.manager.model.UploadedPack;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packs on a locally mounted directory. The packs are scanned where they are, without copying them, and are left
+ * in place when they are no longer needed, since the directory is managed outside the license manager.
+ */
+public class LocalDirectoryPackSource implements PackSource {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalDirectoryPackSource.class);
+
+    private final File directory;
+
+    public LocalDirectoryPackSource(File directory) {
+
+        this.directory = directory.getAbsoluteFile();
+    }
+
+    @Override
+    public List<UploadedPack> listPacks() throws LicenseManagerConfigurationException {
+
+        File[] files = directory.listFiles(file -> file.isFile() && file.getName().endsWith(".zip"));
+        if (files == null) {
+            throw new LicenseManagerConfigurationException("Failed to list the packs in " + directory);
+        }
+        List<UploadedPack> packs = new ArrayList<>();
+        for (File file : files) {
+            packs.add(toUploadedPack(file));
+        }
+        return packs;
+    }
+
+    @Override
+    public UploadedPack getPack(String packName) throws LicenseManagerConfigurationException {
+
+        return toUploadedPack(getLocalFile(packName));
+    }
+
+    @Override
+    public String getLocation(String packName) {
+
+        return "file:" + new File(directory, packName).getPath();
+    }
+
+    @Override
+    public File getLocalFile(String packName) throws LicenseManagerConfigurationException {
+
+        File file = new File(directory, packName);
+        // Do not let the name of a pack lead out of the directory.
+        if (!directory.equals(file.getParentFile()) || !file.isFile()) {
+            throw new LicenseManagerConfigurationException("The pack " + packName + " is not found in " + directory);
+        }
+        return file;
+    }
+
+    @Override
+    public void download(String packName, File target) throws LicenseManagerConfigurationException {
+
+        try {
+            Files.copy(getLocalFile(packName).toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new LicenseManagerConfigurationException("Failed to copy the pack " + packName, e);
+        }
+    }
+
+    @Override
+    public InputStream open(String packName) throws LicenseManagerConfigurationException {
+
+        try {
+            return Files.newInputStream(getLocalFile(packName).toPath());
+        } catch (IOException e) {
+            throw new LicenseManagerConfigurationException("Failed to open the pack " + packName, e);
+        }
+    }
+
+    @Override
+    public void delete(String packName) {
+
+        if (log.isDebugEnabled()) {
+            log.debug("The pack " + packName + " is left in " + directory);
+        }
+    }
+
+    private static UploadedPack toUploadedPack(File file) {
+
+        return new UploadedPack(file.getName(), file.length(), TimeUnit.MILLISECONDS.toSeconds(file.lastModified()));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.connector;
+
+import org.wso2.internal.apps.license.manager.exception.LicenseManagerConfigurationException;
+import org.wso2.internal.apps.license.manager.model.UploadedPack;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * A place the packs are uploaded to and retrieved from.
+ */
+public interface PackSource {
+
+    /**
+     * @return the zip packs available, with their size and modification time
+     * @throws LicenseManagerConfigurationException if the packs cannot be listed
+     */
+    List<UploadedPack> listPacks() throws LicenseManagerConfigurationException;
+
+    /**
+     * @param packName name of the pack
+     * @return the pack with its size and modification time
+     * @throws LicenseManagerConfigurationException if the pack is not found
+     */
+    UploadedPack getPack(String packName) throws LicenseManagerConfigurationException;
+
+    /**
+     * @param packName name of the pack
+     * @return location of the pack which identifies it across the sources, used as the key of the pack cache
+     */
+    String getLocation(String packName);
+
+    /**
+     * Get the pack as a file which can be read in place, without copying it.
+     *
+     * @param packName name of the pack
+     * @return the pack on the local file system, or null if the pack has to be downloaded
+     * @throws LicenseManagerConfigurationException if the pack is not found
+     */
+    File getLocalFile(String packName) throws LicenseManagerConfigurationException;
+
+    /**
+     * Copy the pack to a file.
+     *
+     * @param packName name of the pack
+     * @param target   file to copy the pack to
+     * @throws LicenseManagerConfigurationException if the pack cannot be copied
+     */
+    void download(String packName, File target) throws LicenseManagerConfigurationException;
+
+    /**
+     * Open a stream to read the pack from the start. Closing the stream releases everything held to read it.
+     *
+     * @param packName name of the pack
+     * @return stream of the pack
+     * @throws LicenseManagerConfigurationException if the pack cannot be opened
+     */
+    InputStream open(String packName) throws LicenseManagerConfigurationException;
+
+    /**
+     * Remove a pack which is no longer needed, once its license file has been generated.
+     *
+     * @param packName name of the pack
+     * @throws LicenseManagerConfigurationException if the pack cannot be removed
+     */
+    void delete(String packName) throws LicenseManagerConfigurationException;
+}
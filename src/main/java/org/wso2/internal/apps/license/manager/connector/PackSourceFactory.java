@@ -0,0 +1,81 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.connector;
+
+import org.wso2.internal.apps.license.manager.exception.LicenseManagerConfigurationException;
+import org.wso2.internal.apps.license.manager.util.Constants;
+import org.wso2.msf4j.util.SystemVariableUtil;
+
+import java.io.File;
+
+/**
+ * Selects the source of the packs, from the LICENSE_MANAGER_PACK_SOURCE environment variable.
+ */
+public class PackSourceFactory {
+
+    private static PackSource packSource = null;
+
+    /**
+     * Hide the public constructor.
+     */
+    private PackSourceFactory() {
+
+    }
+
+    /**
+     * @return the source of the packs
+     * @throws LicenseManagerConfigurationException if the source is not configured completely
+     */
+    public static synchronized PackSource getPackSource() throws LicenseManagerConfigurationException {
+
+        if (packSource == null) {
+            String sourceType = SystemVariableUtil.getValue(Constants.PACK_SOURCE, Constants.PACK_SOURCE_SFTP);
+            switch (sourceType) {
+                case Constants.PACK_SOURCE_LOCAL:
+                    String directory = SystemVariableUtil.getValue(Constants.PACK_SOURCE_DIRECTORY, null);
+                    if (directory == null || directory.trim().isEmpty()) {
+                        throw new LicenseManagerConfigurationException("The pack source is " +
+                                Constants.PACK_SOURCE_LOCAL + " but " + Constants.PACK_SOURCE_DIRECTORY +
+                                " is not set");
+                    }
+                    packSource = new LocalDirectoryPackSource(new File(directory));
+                    break;
+                case Constants.PACK_SOURCE_MEMORY:
+                    packSource = new InMemoryPackSource();
+                    break;
+                default:
+                    packSource = new SftpPackSource();
+                    break;
+            }
+        }
+        return packSource;
+    }
+
+    /**
+     * Replace the source of the packs, for example with an in-memory source filled by a benchmark.
+     *
+     * @param source the source of the packs
+     */
+    public static synchronized void setPackSource(PackSource source) {
+
+        packSource = source;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.connector;
+
+import org.wso2.internal.apps.license.manager.exception.LicenseManagerConfigurationException;
+import org.wso2.internal.apps.license.manager.model.UploadedPack;
+import org.wso2.internal.apps.license.manager.util.Constants;
+import org.wso2.msf4j.util.SystemVariableUtil;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Packs uploaded to the FTP server, retrieved over SFTP channels leased from the session pool.
+ */
+public class SftpPackSource implements PackSource {
+
+    @Override
+    public List<UploadedPack> listPacks() throws LicenseManagerConfigurationException {
+
+        try (FtpConnectionManager ftpConnectionManager = FtpConnectionManager.getFtpConnectionManager()) {
+            return ftpConnectionManager.listPacksInFtpServer();
+        }
+    }
+
+    @Override
+    public UploadedPack getPack(String packName) throws LicenseManagerConfigurationException {
+
+        try (FtpConnectionManager ftpConnectionManager = FtpConnectionManager.getFtpConnectionManager()) {
+            return ftpConnectionManager.statFileInFtpServer(packName);
+        }
+    }
+
+    @Override
+    public String getLocation(String packName) {
+
+        return "sftp:" + SystemVariableUtil.getValue(Constants.FTP_FILE_LOCATION, null) + packName;
+    }
+
+    @Override
+    public File getLocalFile(String packName) {
+
+        return null;
+    }
+
+    @Override
+    public void download(String packName, File target) throws LicenseManagerConfigurationException {
+
+        try (FtpConnectionManager ftpConnectionManager = FtpConnectionManager.getFtpConnectionManager()) {
+            ftpConnectionManager.downloadFileFromFtpServer(packName, target);
+        }
+    }
+
+    @Override
+    public InputStream open(String packName) throws LicenseManagerConfigurationException {
+
+        FtpConnectionManager ftpConnectionManager = FtpConnectionManager.getFtpConnectionManager();
+        try {
+            // Keep the channel leased until the stream is closed.
+            return new FilterInputStream(ftpConnectionManager.openFileFromFtpServer(packName)) {
+
+                @Override
+                public void close() throws IOException {
+
+                    try {
+                        super.close();
+                    } finally {
+                        ftpConnectionManager.close();
+                    }
+                }
+            };
+        } catch (LicenseManagerConfigurationException | RuntimeException e) {
+            ftpConnectionManager.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void delete(String packName) throws LicenseManagerConfigurationException {
+
+        try (FtpConnectionManager ftpConnectionManager = FtpConnectionManager.getFtpConnectionManager()) {
+            ftpConnectionManager.deleteFileFromFtpServer(packName.endsWith(".zip") ?
+                    packName.substring(0, packName.length() - ".zip".length()) : packName);
+        }
+    }
+}
@@ -0,0 +1,383 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.connector;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.internal.apps.license.manager.exception.LicenseManagerConfigurationException;
+import org.wso2.internal.apps.license.manager.util.Constants;
+import org.wso2.msf4j.util.SystemVariableUtil;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of authenticated SFTP sessions and of the channels opened over them. Channels are leased one at a
+ * time, so that concurrent tasks never share a channel, and are kept open for the next lease when they are
+ * returned. A channel which has been idle for a while is checked with a round trip before it is leased again,
+ * channels idle for too long are closed along with their sessions, and the sessions are kept alive meanwhile.
+ */
+class SftpSessionPool {
+
+    private static final Logger log = LoggerFactory.getLogger(SftpSessionPool.class);
+    private static final int CHANNEL_CONNECT_TIMEOUT = 600000;
+    private static final int KEEPALIVE_COUNT_MAX = 3;
+    private static SftpSessionPool sftpSessionPool = null;
+
+    private final int maxSessions;
+    private final int maxChannelsPerSession;
+    private final long idleTimeoutMillis;
+    private final long healthCheckMillis;
+    private final long leaseTimeoutSeconds;
+    private final int keepaliveMillis;
+    private final Semaphore leases;
+    private final List<PooledSession> sessions = new ArrayList<>();
+    private final Deque<IdleChannel> idleChannels = new ArrayDeque<>();
+    private final Map<ChannelSftp, PooledSession> channelSessions = new IdentityHashMap<>();
+
+    private SftpSessionPool() {
+
+        maxSessions = Math.max(1, Integer.parseInt(SystemVariableUtil.getValue(Constants.FTP_MAX_SESSIONS,
+                String.valueOf(Constants.DEFAULT_FTP_MAX_SESSIONS))));
+        maxChannelsPerSession = Math.max(1, Integer.parseInt(SystemVariableUtil.getValue(
+                Constants.FTP_MAX_CHANNELS_PER_SESSION,
+                String.valueOf(Constants.DEFAULT_FTP_MAX_CHANNELS_PER_SESSION))));
+        idleTimeoutMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(SystemVariableUtil.getValue(
+                Constants.FTP_IDLE_TIMEOUT_SECONDS, String.valueOf(Constants.DEFAULT_FTP_IDLE_TIMEOUT_SECONDS))));
+        healthCheckMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(SystemVariableUtil.getValue(
+                Constants.FTP_HEALTH_CHECK_SECONDS, String.valueOf(Constants.DEFAULT_FTP_HEALTH_CHECK_SECONDS))));
+        leaseTimeoutSeconds = Long.parseLong(SystemVariableUtil.getValue(Constants.FTP_LEASE_TIMEOUT_SECONDS,
+                String.valueOf(Constants.DEFAULT_FTP_LEASE_TIMEOUT_SECONDS)));
+        keepaliveMillis = (int) TimeUnit.SECONDS.toMillis(Long.parseLong(SystemVariableUtil.getValue(
+                Constants.FTP_KEEPALIVE_SECONDS, String.valueOf(Constants.DEFAULT_FTP_KEEPALIVE_SECONDS))));
+        leases = new Semaphore(maxSessions * maxChannelsPerSession, true);
+
+        ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sftp-session-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long evictionPeriod = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdleChannels, evictionPeriod, evictionPeriod,
+                TimeUnit.MILLISECONDS);
+    }
+
+    static synchronized SftpSessionPool getSftpSessionPool() {
+
+        if (sftpSessionPool == null) {
+            sftpSessionPool = new SftpSessionPool();
+        }
+        return sftpSessionPool;
+    }
+
+    /**
+     * Lease a channel, waiting for one to be returned if every channel of the pool is leased.
+     *
+     * @return connected SFTP channel, to be returned with {@link #release(ChannelSftp, boolean)}
+     * @throws LicenseManagerConfigurationException if no channel can be leased in time or a connection fails
+     */
+    ChannelSftp lease() throws LicenseManagerConfigurationException {
+
+        try {
+            if (!leases.tryAcquire(leaseTimeoutSeconds, TimeUnit.SECONDS)) {
+                throw new LicenseManagerConfigurationException("Timed out waiting for a connection to the FTP " +
+                        "server, all " + (maxSessions * maxChannelsPerSession) + " connections are in use");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LicenseManagerConfigurationException("Interrupted while waiting for a connection to the FTP " +
+                    "server", e);
+        }
+        return acquireChannel();
+    }
+
+    /**
+     * Lease a channel only if one is available right away.
+     *
+     * @return connected SFTP channel, or null if every channel of the pool is leased
+     * @throws LicenseManagerConfigurationException if a connection fails
+     */
+    ChannelSftp tryLease() throws LicenseManagerConfigurationException {
+
+        return leases.tryAcquire() ? acquireChannel() : null;
+    }
+
+    /**
+     * Return a leased channel to the pool.
+     *
+     * @param channel channel to return
+     * @param broken  true if the channel must not be leased again
+     */
+    void release(ChannelSftp channel, boolean broken) {
+
+        try {
+            if (broken || !isConnected(channel)) {
+                discard(channel);
+            } else {
+                synchronized (this) {
+                    idleChannels.addFirst(new IdleChannel(channel, System.currentTimeMillis()));
+                }
+            }
+        } finally {
+            leases.release();
+        }
+    }
+
+    private ChannelSftp acquireChannel() throws LicenseManagerConfigurationException {
+
+        try {
+            while (true) {
+                IdleChannel idleChannel;
+                PooledSession session;
+                synchronized (this) {
+                    // The most recently used channel is the least likely to have gone stale.
+                    idleChannel = idleChannels.pollFirst();
+                    session = (idleChannel == null) ? reserveChannel() : null;
+                }
+                if (idleChannel == null) {
+                    return openChannel(session);
+                }
+                if (isHealthy(idleChannel)) {
+                    return idleChannel.channel;
+                }
+                log.info("Discarding a stale channel to the FTP server");
+                discard(idleChannel.channel);
+            }
+        } catch (LicenseManagerConfigurationException | RuntimeException e) {
+            leases.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Reserve a channel on a live session with room for it, or on a new session if there is none.
+     */
+    private PooledSession reserveChannel() throws LicenseManagerConfigurationException {
+
+        int liveSessions = 0;
+        for (PooledSession session : sessions) {
+            if (session.isLive()) {
+                liveSessions++;
+                if (session.channels < maxChannelsPerSession) {
+                    session.channels++;
+                    return session;
+                }
+            }
+        }
+        if (liveSessions >= maxSessions) {
+            throw new LicenseManagerConfigurationException("No room for a new channel to the FTP server");
+        }
+        PooledSession session = new PooledSession();
+        session.channels++;
+        sessions.add(session);
+        return session;
+    }
+
+    private ChannelSftp openChannel(PooledSession session) throws LicenseManagerConfigurationException {
+
+        try {
+            Session jschSession;
+            synchronized (session) {
+                if (session.session == null) {
+                    session.session = createSession();
+                }
+                jschSession = session.session;
+            }
+            ChannelSftp channel = (ChannelSftp) jschSession.openChannel("sftp");
+            channel.connect(CHANNEL_CONNECT_TIMEOUT);
+            synchronized (this) {
+                channelSessions.put(channel, session);
+            }
+            return channel;
+        } catch (JSchException e) {
+            synchronized (this) {
+                session.channels--;
+                removeIfUnused(session);
+            }
+            throw new LicenseManagerConfigurationException("Failed to initiate a connection with FTP server", e);
+        }
+    }
+
+    private Session createSession() throws JSchException {
+
+        String ftpHost = SystemVariableUtil.getValue(Constants.FTP_HOST, null);
+        int ftpPort = Integer.parseInt(SystemVariableUtil.getValue(Constants.FTP_PORT, null));
+        String ftpUsername = SystemVariableUtil.getValue(Constants.FTP_USERNAME, null);
+        String ftpPassword = SystemVariableUtil.getValue(Constants.FTP_PASSWORD, null);
+        JSch jsch = new JSch();
+
+        Session session = jsch.getSession(ftpUsername, ftpHost, ftpPort);
+        session.setPassword(ftpPassword);
+        Properties config = new Properties();
+        config.put("StrictHostKeyChecking", "no");
+        session.setConfig(config);
+        session.setServerAliveInterval(keepaliveMillis);
+        session.setServerAliveCountMax(KEEPALIVE_COUNT_MAX);
+        session.connect();
+        if (log.isDebugEnabled()) {
+            log.debug("Opened a new session to the FTP server " + ftpHost + ":" + ftpPort);
+        }
+        return session;
+    }
+
+    private static boolean isConnected(ChannelSftp channel) {
+
+        return channel.isConnected() && !channel.isClosed() && isConnected(getSession(channel));
+    }
+
+    private static boolean isConnected(Session session) {
+
+        return session != null && session.isConnected();
+    }
+
+    private static Session getSession(ChannelSftp channel) {
+
+        try {
+            return channel.getSession();
+        } catch (JSchException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A channel which has been idle for longer than the health check interval is checked with a round trip.
+     */
+    private boolean isHealthy(IdleChannel idleChannel) {
+
+        if (!isConnected(idleChannel.channel)) {
+            return false;
+        }
+        if (System.currentTimeMillis() - idleChannel.idleSince < healthCheckMillis) {
+            return true;
+        }
+        try {
+            idleChannel.channel.realpath(".");
+            return true;
+        } catch (SftpException e) {
+            return false;
+        }
+    }
+
+    private void discard(ChannelSftp channel) {
+
+        channel.disconnect();
+        synchronized (this) {
+            PooledSession session = channelSessions.remove(channel);
+            if (session != null) {
+                session.channels--;
+                removeIfUnused(session);
+            }
+        }
+    }
+
+    /**
+     * Close a session once it has no channels left and can no longer be used.
+     */
+    private void removeIfUnused(PooledSession session) {
+
+        if (session.channels == 0 && (session.session == null || !session.session.isConnected())) {
+            sessions.remove(session);
+        }
+    }
+
+    /**
+     * Close the channels idle for longer than the idle timeout, and the sessions left without channels.
+     */
+    private void evictIdleChannels() {
+
+        List<ChannelSftp> evictedChannels = new ArrayList<>();
+        List<Session> evictedSessions = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (Iterator<IdleChannel> iterator = idleChannels.iterator(); iterator.hasNext(); ) {
+                IdleChannel idleChannel = iterator.next();
+                if (now - idleChannel.idleSince >= idleTimeoutMillis || !isConnected(idleChannel.channel)) {
+                    iterator.remove();
+                    evictedChannels.add(idleChannel.channel);
+                }
+            }
+        }
+        evictedChannels.forEach(this::discard);
+        synchronized (this) {
+            for (Iterator<PooledSession> iterator = sessions.iterator(); iterator.hasNext(); ) {
+                PooledSession session = iterator.next();
+                if (session.channels == 0) {
+                    iterator.remove();
+                    if (session.session != null) {
+                        evictedSessions.add(session.session);
+                    }
+                }
+            }
+        }
+        evictedSessions.forEach(Session::disconnect);
+        if (!evictedChannels.isEmpty() && log.isDebugEnabled()) {
+            log.debug("Closed " + evictedChannels.size() + " idle channel(s) and " + evictedSessions.size() +
+                    " session(s) to the FTP server");
+        }
+    }
+
+    /**
+     * A session along with the number of channels open or being opened over it.
+     */
+    private static class PooledSession {
+
+        private Session session;
+        private int channels;
+
+        /**
+         * @return true if the session is connected or is about to be
+         */
+        boolean isLive() {
+
+            return session == null || session.isConnected();
+        }
+    }
+
+    /**
+     * A channel waiting in the pool for the next lease.
+     */
+    private static class IdleChannel {
+
+        private final ChannelSftp channel;
+        private final long idleSince;
+
+        IdleChannel(ChannelSftp channel, long idleSince) {
+
+            this.channel = channel;
+            this.idleSince = idleSince;
+        }
+    }
+}
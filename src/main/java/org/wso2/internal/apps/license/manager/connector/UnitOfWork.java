@@ -0,0 +1,216 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.connector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A unit of work shares one pooled connection among all the DAOs used by a thread, so that a call tree which nests
+ * DAOs holds a single connection instead of one per DAO. The connection is taken from the pool by the first DAO or
+ * unit of work of the thread and returned when the last one is closed.
+ * <p>
+ * A unit of work started with {@link #begin()} also runs the statements of the DAOs in a transaction, which is
+ * committed or rolled back explicitly and rolled back if the unit is closed without a commit. A unit begun inside
+ * another joins the enclosing transaction: its commit leaves the decision to the outer unit, and its rollback
+ * makes the outer commit fail.
+ */
+public class UnitOfWork implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(UnitOfWork.class);
+    private static final ThreadLocal<SharedConnection> sharedConnection = new ThreadLocal<>();
+
+    private final SharedConnection shared;
+    private boolean completed;
+    private boolean closed;
+
+    private UnitOfWork(SharedConnection shared) {
+
+        this.shared = shared;
+    }
+
+    /**
+     * Begin a unit of work on the current thread, or join the unit of work which is already active.
+     *
+     * @return the unit of work, to be closed when the work is done
+     * @throws SQLException if a connection cannot be taken from the pool or the transaction cannot be started
+     */
+    public static UnitOfWork begin() throws SQLException {
+
+        SharedConnection shared = acquire();
+        try {
+            if (shared.transactions == 0) {
+                shared.connection.setAutoCommit(false);
+                shared.rollbackOnly = false;
+            }
+        } catch (SQLException e) {
+            release(shared);
+            throw e;
+        }
+        shared.transactions++;
+        return new UnitOfWork(shared);
+    }
+
+    /**
+     * Get the connection of the current thread for a DAO, taking it from the pool if no DAO or unit of work of the
+     * thread holds it yet. Each call must be matched by a call to {@link #releaseConnection(Connection)}.
+     *
+     * @return the shared connection
+     * @throws SQLException if a connection cannot be taken from the pool
+     */
+    public static Connection getConnection() throws SQLException {
+
+        return acquire().connection;
+    }
+
+    /**
+     * Release the connection of a DAO. The connection goes back to the pool only when nothing else on the thread
+     * uses it.
+     *
+     * @param connection connection obtained from {@link #getConnection()}
+     * @throws SQLException if closing the connection fails
+     */
+    public static void releaseConnection(Connection connection) throws SQLException {
+
+        SharedConnection shared = sharedConnection.get();
+        if (shared != null && shared.connection == connection) {
+            release(shared);
+        } else {
+            // The connection was obtained on another thread, which does not share it.
+            connection.close();
+        }
+    }
+
+    /**
+     * Commit the work. Inside an enclosing unit of work the commit is left to the enclosing unit.
+     *
+     * @throws SQLException if the commit fails or an inner unit of work was rolled back
+     */
+    public void commit() throws SQLException {
+
+        checkActive();
+        completed = true;
+        if (shared.transactions > 1) {
+            return;
+        }
+        if (shared.rollbackOnly) {
+            shared.connection.rollback();
+            throw new SQLException("The unit of work was rolled back because an inner unit of work was rolled back");
+        }
+        shared.connection.commit();
+    }
+
+    /**
+     * Roll back the work. Inside an enclosing unit of work the enclosing unit is marked to be rolled back.
+     *
+     * @throws SQLException if the rollback fails
+     */
+    public void rollback() throws SQLException {
+
+        checkActive();
+        completed = true;
+        if (shared.transactions > 1) {
+            shared.rollbackOnly = true;
+            return;
+        }
+        shared.connection.rollback();
+    }
+
+    /**
+     * End the unit of work, rolling it back if it was neither committed nor rolled back.
+     */
+    @Override
+    public void close() {
+
+        if (closed) {
+            return;
+        }
+        try {
+            if (!completed) {
+                rollback();
+            }
+        } catch (SQLException e) {
+            log.error("Failed to roll back the unit of work. " + e.getMessage(), e);
+        } finally {
+            closed = true;
+            shared.transactions--;
+            try {
+                if (shared.transactions == 0) {
+                    shared.connection.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                log.error("Failed to end the transaction of the unit of work. " + e.getMessage(), e);
+            }
+            try {
+                release(shared);
+            } catch (SQLException e) {
+                log.error("Failed to close the connection of the unit of work. " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void checkActive() {
+
+        if (closed || completed) {
+            throw new IllegalStateException("The unit of work is already completed");
+        }
+    }
+
+    private static SharedConnection acquire() throws SQLException {
+
+        SharedConnection shared = sharedConnection.get();
+        if (shared == null) {
+            shared = new SharedConnection(DatabaseConnectionPool.getDbConnectionPool().getConnection());
+            sharedConnection.set(shared);
+        }
+        shared.references++;
+        return shared;
+    }
+
+    private static void release(SharedConnection shared) throws SQLException {
+
+        shared.references--;
+        if (shared.references == 0) {
+            sharedConnection.remove();
+            shared.connection.close();
+        }
+    }
+
+    /**
+     * The connection shared by the DAOs and the units of work of a thread.
+     */
+    private static class SharedConnection {
+
+        private final Connection connection;
+        private int references;
+        private int transactions;
+        private boolean rollbackOnly;
+
+        SharedConnection(Connection connection) {
+
+            this.connection = connection;
+        }
+    }
+}
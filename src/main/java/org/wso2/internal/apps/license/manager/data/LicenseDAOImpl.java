@@ -23,7 +23,7 @@ package org.wso2.internal.apps.license.manager.data;
 import com.google.gson.JsonArray;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.wso2.internal.apps.license.manager.connector.DatabaseConnectionPool;
+import org.wso2.internal.apps.license.manager.connector.UnitOfWork;
 import org.wso2.internal.apps.license.manager.model.LibraryDetails;
 import org.wso2.internal.apps.license.manager.model.License;
 import org.wso2.internal.apps.license.manager.util.JsonUtils;
@@ -47,15 +47,15 @@ public class LicenseDAOImpl implements LicenseDAO, Closeable {
 
     public LicenseDAOImpl() throws SQLException {
 
-        DatabaseConnectionPool databaseConnectionPool = DatabaseConnectionPool.getDbConnectionPool();
-        connection = databaseConnectionPool.getConnection();
+        // Share the connection with the other DAOs and the unit of work of the thread.
+        connection = UnitOfWork.getConnection();
     }
 
     @Override
     public void close() throws IOException {
-        //close the connection and release system resources associated
+        //release the connection, which goes back to the pool once no other DAO of the thread uses it
         try {
-            connection.close();
+            UnitOfWork.releaseConnection(connection);
         } catch (SQLException e) {
             log.info("Exception occured while closing connection", e);
         }
@@ -0,0 +1,296 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.internal.apps.license.manager.connector.UnitOfWork;
+import org.wso2.internal.apps.license.manager.model.LibraryDetails;
+import org.wso2.internal.apps.license.manager.util.SqlConstants;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ingests the libraries of a pack with a few statements per batch of libraries instead of several round trips per
+ * library. The statements run on the connection of the unit of work of the thread, so that the pack is ingested in
+ * the transaction of the caller.
+ */
+public class PackIngestDAOImpl implements PackIngestDAO, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(PackIngestDAOImpl.class);
+    private static final int BATCH_SIZE = 500;
+    private static final String DEFAULT_LICENSE_KEY = "NEW";
+    private Connection connection;
+
+    public PackIngestDAOImpl() throws SQLException {
+
+        // Share the connection with the other DAOs and the unit of work of the thread.
+        connection = UnitOfWork.getConnection();
+    }
+
+    @Override
+    public void close() throws IOException {
+        //release the connection, which goes back to the pool once no other DAO of the thread uses it
+        try {
+            UnitOfWork.releaseConnection(connection);
+        } catch (SQLException e) {
+            log.info("Exception occured while closing connection", e);
+        }
+    }
+
+    @Override
+    public int getOrInsertProduct(String product, String version) throws SQLException {
+
+        try (PreparedStatement preparedStatement = connection.prepareStatement(SqlConstants.SELECT_PRODUCT)) {
+            preparedStatement.setString(1, product);
+            preparedStatement.setString(2, version);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                if (resultSet.next()) {
+                    return resultSet.getInt(SqlConstants.PRIMARY_KEY_PRODUCT);
+                }
+            }
+        }
+        try (PreparedStatement preparedStatement = connection.prepareStatement(SqlConstants.INSERT_PRODUCT,
+                Statement.RETURN_GENERATED_KEYS)) {
+            preparedStatement.setString(1, product);
+            preparedStatement.setString(2, version);
+            preparedStatement.executeUpdate();
+            try (ResultSet resultSet = preparedStatement.getGeneratedKeys()) {
+                return resultSet.next() ? resultSet.getInt(1) : -1;
+            }
+        }
+    }
+
+    @Override
+    public int[] getOrInsertLibraries(List<LibraryDetails> libraries) throws SQLException {
+
+        Map<String, LibraryDetails> uniqueLibraries = getUniqueLibraries(libraries);
+        Map<String, LibraryRow> rows = selectLibraries(uniqueLibraries.values());
+
+        // Insert the libraries which are not in the database yet and read back their ids.
+        List<LibraryDetails> missingLibraries = new ArrayList<>();
+        for (Map.Entry<String, LibraryDetails> entry : uniqueLibraries.entrySet()) {
+            if (!rows.containsKey(entry.getKey())) {
+                missingLibraries.add(entry.getValue());
+            }
+        }
+        if (!missingLibraries.isEmpty()) {
+            try (PreparedStatement preparedStatement = connection.prepareStatement(SqlConstants.INSERT_LIBRARY)) {
+                for (int i = 0; i < missingLibraries.size(); i++) {
+                    LibraryDetails libraryDetails = missingLibraries.get(i);
+                    preparedStatement.setString(1, libraryDetails.getName());
+                    preparedStatement.setString(2, libraryDetails.getVersion());
+                    preparedStatement.setString(3, libraryDetails.getType());
+                    preparedStatement.setString(4, libraryDetails.getFileName());
+                    preparedStatement.addBatch();
+                    if ((i + 1) % BATCH_SIZE == 0 || i == missingLibraries.size() - 1) {
+                        preparedStatement.executeBatch();
+                    }
+                }
+            }
+            rows.putAll(selectLibraries(missingLibraries));
+            log.info("Inserted " + missingLibraries.size() + " new libraries");
+        }
+
+        int[] libIDs = new int[libraries.size()];
+        for (int i = 0; i < libraries.size(); i++) {
+            LibraryRow row = rows.get(getLibraryKey(libraries.get(i)));
+            libIDs[i] = (row == null) ? 0 : row.id;
+        }
+        return libIDs;
+    }
+
+    @Override
+    public void insertLibraryProducts(int[] libIDs, int prodID) throws SQLException {
+
+        Set<Integer> uniqueLibIDs = new LinkedHashSet<>();
+        for (int libID : libIDs) {
+            if (libID > 0) {
+                uniqueLibIDs.add(libID);
+            }
+        }
+        List<Integer> libIDList = new ArrayList<>(uniqueLibIDs);
+        for (int start = 0; start < libIDList.size(); start += BATCH_SIZE) {
+            List<Integer> batch = libIDList.subList(start, Math.min(start + BATCH_SIZE, libIDList.size()));
+            try (PreparedStatement preparedStatement = connection.prepareStatement(String.format(
+                    SqlConstants.INSERT_LIBRARY_PRODUCTS, getPlaceholders("(?,?)", ",", batch.size())))) {
+                int index = 1;
+                for (int libID : batch) {
+                    preparedStatement.setInt(index++, libID);
+                    preparedStatement.setInt(index++, prodID);
+                }
+                preparedStatement.executeUpdate();
+            }
+        }
+        log.info("Linked " + libIDList.size() + " libraries to the product id " + prodID);
+    }
+
+    @Override
+    public boolean[] checkLicenses(List<LibraryDetails> libraries) throws SQLException {
+
+        Map<String, LibraryRow> rows = selectLibraries(getUniqueLibraries(libraries).values());
+        boolean[] licensed = new boolean[libraries.size()];
+        for (int i = 0; i < libraries.size(); i++) {
+            LibraryRow row = rows.get(getLibraryKey(libraries.get(i)));
+            licensed[i] = (row != null) && row.licensed;
+        }
+        return licensed;
+    }
+
+    /**
+     * Select the license of any version of each library, from the first library of the name.
+     *
+     * @param libNames names of the libraries
+     * @return license keys aligned with the names, NEW if there is no license
+     * @throws SQLException if sql execution fails
+     */
+    @Override
+    public List<String> getLicensesForAnyVersion(List<String> libNames) throws SQLException {
+
+        List<String> uniqueLibNames = new ArrayList<>(new LinkedHashSet<>(libNames));
+        Map<String, String> licenseKeys = new HashMap<>();
+        for (int start = 0; start < uniqueLibNames.size(); start += BATCH_SIZE) {
+            List<String> batch = uniqueLibNames.subList(start, Math.min(start + BATCH_SIZE, uniqueLibNames.size()));
+            try (PreparedStatement preparedStatement = connection.prepareStatement(String.format(
+                    SqlConstants.SELECT_LICENSES_FOR_ANY_LIBS, getPlaceholders("?", ",", batch.size())))) {
+                int index = 1;
+                for (String libName : batch) {
+                    preparedStatement.setString(index++, libName);
+                }
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    while (resultSet.next()) {
+                        String licenseKey = resultSet.getString(2);
+                        licenseKeys.putIfAbsent(normalize(resultSet.getString(1)),
+                                licenseKey == null ? DEFAULT_LICENSE_KEY : licenseKey);
+                    }
+                }
+            }
+        }
+
+        List<String> result = new ArrayList<>(libNames.size());
+        for (String libName : libNames) {
+            result.add(licenseKeys.getOrDefault(normalize(libName), DEFAULT_LICENSE_KEY));
+        }
+        return result;
+    }
+
+    private Map<String, LibraryRow> selectLibraries(Collection<LibraryDetails> libraries) throws SQLException {
+
+        List<LibraryDetails> libraryList = new ArrayList<>(libraries);
+        Map<String, LibraryRow> rows = new HashMap<>();
+        for (int start = 0; start < libraryList.size(); start += BATCH_SIZE) {
+            List<LibraryDetails> batch = libraryList.subList(start, Math.min(start + BATCH_SIZE, libraryList.size()));
+            try (PreparedStatement preparedStatement = connection.prepareStatement(String.format(
+                    SqlConstants.SELECT_LIBRARIES_BY_KEYS, getPlaceholders("(?,?,?)", ",", batch.size())))) {
+                int index = 1;
+                for (LibraryDetails libraryDetails : batch) {
+                    preparedStatement.setString(index++, libraryDetails.getName());
+                    preparedStatement.setString(index++, libraryDetails.getVersion());
+                    preparedStatement.setString(index++, libraryDetails.getType());
+                }
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    while (resultSet.next()) {
+                        // The first row gives the id, any row with a license makes the library licensed.
+                        String key = getLibraryKey(resultSet.getString(2), resultSet.getString(3),
+                                resultSet.getString(4));
+                        boolean licensed = resultSet.getObject(5) != null;
+                        LibraryRow row = rows.get(key);
+                        if (row == null) {
+                            rows.put(key, new LibraryRow(resultSet.getInt(1), licensed));
+                        } else {
+                            row.licensed |= licensed;
+                        }
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static Map<String, LibraryDetails> getUniqueLibraries(List<LibraryDetails> libraries) {
+
+        Map<String, LibraryDetails> uniqueLibraries = new LinkedHashMap<>();
+        for (LibraryDetails libraryDetails : libraries) {
+            uniqueLibraries.putIfAbsent(getLibraryKey(libraryDetails), libraryDetails);
+        }
+        return uniqueLibraries;
+    }
+
+    private static String getLibraryKey(LibraryDetails libraryDetails) {
+
+        return getLibraryKey(libraryDetails.getName(), libraryDetails.getVersion(), libraryDetails.getType());
+    }
+
+    /**
+     * The columns are compared without case by the database, so are the keys.
+     */
+    private static String getLibraryKey(String name, String version, String type) {
+
+        return normalize(name) + '\0' + normalize(version) + '\0' + normalize(type);
+    }
+
+    private static String normalize(String value) {
+
+        return (value == null) ? "" : value.toLowerCase(Locale.ROOT);
+    }
+
+    private static String getPlaceholders(String placeholder, String separator, int count) {
+
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                placeholders.append(separator);
+            }
+            placeholders.append(placeholder);
+        }
+        return placeholders.toString();
+    }
+
+    /**
+     * A library as found in the database.
+     */
+    private static class LibraryRow {
+
+        private final int id;
+        private boolean licensed;
+
+        LibraryRow(int id, boolean licensed) {
+
+            this.id = id;
+            this.licensed = licensed;
+        }
+    }
+}
@@ -23,6 +23,7 @@ package org.wso2.internal.apps.license.manager.impl;
 import com.google.gson.JsonArray;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.wso2.internal.apps.license.manager.connector.UnitOfWork;
 import org.wso2.internal.apps.license.manager.data.LibraryDAOImpl;
 import org.wso2.internal.apps.license.manager.data.LicenseDAOImpl;
 import org.wso2.internal.apps.license.manager.exception.LicenseManagerDataException;
@@ -112,11 +113,14 @@ public class AddLicenseServiceAPIImpl {
 
         List<License> newLicenseEntryComponentList = null;
         List<License> newLicenseEntryLibraryList = null;
-        try (LicenseDAOImpl licenseDAO = new LicenseDAOImpl()) {
+        // The licenses of the pack are added all together or not at all, on one connection.
+        try (UnitOfWork unitOfWork = UnitOfWork.begin();
+             LicenseDAOImpl licenseDAO = new LicenseDAOImpl()) {
             newLicenseEntryComponentList = insertComponentLicenses(packDetails.getLicenseMissingComponentLibraries(),
                     packDetails.getPackId(), licenseDAO);
             newLicenseEntryLibraryList = insertLibraryLicenses(packDetails.getLicenseMissingLibraries(),
                     packDetails.getPackId(), licenseDAO);
+            unitOfWork.commit();
             isInsertionSuccess = true;
         } catch (SQLException e) {
             throw new LicenseManagerDataException("Failed to add licenses.", e);
@@ -135,7 +139,7 @@ public class AddLicenseServiceAPIImpl {
         List<License> newLicenseEntryComponentList = new ArrayList<>();
 
         for (LibraryDetails licenseMissingJar : componentList) {
-            String componentName = licenseMissingJar.getJarContent().getName();
+            String componentName = licenseMissingJar.getFileName();
             String licenseKey = licenseMissingJar.getLicenseKey();
             try (LibraryDAOImpl libraryDAO = new LibraryDAOImpl()) {
                 int libId = libraryDAO.getLibraryID(licenseMissingJar);
@@ -158,11 +162,11 @@ public class AddLicenseServiceAPIImpl {
 
         List<License> newLicenseEntryLibraryList = new ArrayList<>();
         for (LibraryDetails licenseMissingJar : libraryList) {
-            String libraryFileName = licenseMissingJar.getJarContent().getName();
+            String libraryFileName = licenseMissingJar.getFileName();
             String licenseKey = licenseMissingJar.getLicenseKey();
             LibraryDetails parent = null;
 
-            if (licenseMissingJar.getJarContent().getParent() != null) {
+            if (licenseMissingJar.getParent() != null) {
                 parent = licenseMissingJar.getParent();
             }
 
@@ -22,18 +22,37 @@ package org.wso2.internal.apps.license.manager.impl;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.wso2.internal.apps.license.manager.connector.FtpConnectionManager;
+import org.wso2.internal.apps.license.manager.connector.PackSource;
+import org.wso2.internal.apps.license.manager.connector.PackSourceFactory;
 import org.wso2.internal.apps.license.manager.exception.LicenseManagerConfigurationException;
 import org.wso2.internal.apps.license.manager.exception.LicenseManagerRuntimeException;
+import org.wso2.internal.apps.license.manager.exception.ScanBudgetExceededException;
+import org.wso2.internal.apps.license.manager.model.LibraryDetails;
 import org.wso2.internal.apps.license.manager.model.PackDetails;
+import org.wso2.internal.apps.license.manager.model.PipelineStatistics;
 import org.wso2.internal.apps.license.manager.model.TaskProgress;
+import org.wso2.internal.apps.license.manager.model.UploadedPack;
 import org.wso2.internal.apps.license.manager.util.Constants;
 import org.wso2.internal.apps.license.manager.util.JarFileHandler;
+import org.wso2.internal.apps.license.manager.util.PackCache;
+import org.wso2.internal.apps.license.manager.util.PackDownloadPipe;
+import org.wso2.internal.apps.license.manager.util.PackDetailsStore;
+import org.wso2.internal.apps.license.manager.util.PackPrescanner;
+import org.wso2.internal.apps.license.manager.util.ScanBudget;
+import org.wso2.internal.apps.license.manager.util.StorageJanitor;
 import org.wso2.internal.apps.license.manager.util.TaskHandler;
 import org.wso2.internal.apps.license.manager.util.ZipHandler;
 import org.wso2.msf4j.util.SystemVariableUtil;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.zip.ZipException;
 
 /**
  * Operations related to extracting a particular jar
@@ -56,47 +75,279 @@ public class ExtractPackServiceImpl {
         taskProgress.setStepNumber(Constants.PACK_EXTRACTION_STEP_ID);
         taskProgress.setMessage("Pack extraction has been started");
 
+        // A pack which is already pre-scanned completes at once.
+        PackDetails prescannedPackDetails = null;
+        try {
+            prescannedPackDetails = PackPrescanner.getPackPrescanner().take(packName, false);
+        } catch (LicenseManagerConfigurationException e) {
+            log.warn("Failed to look up the pre-scanned details of " + packName + ". " + e.getMessage());
+        }
+        if (prescannedPackDetails != null) {
+            publishLibraries(taskProgress, prescannedPackDetails);
+            completeExtraction(taskProgress, prescannedPackDetails);
+            return taskProgress;
+        }
+
         new Thread(() -> {
             taskProgress.setExecutingThreadId(Thread.currentThread().getId());
-            String pathToStorage = SystemVariableUtil.getValue(Constants.FILE_DOWNLOAD_PATH, null);
-            JarFileHandler jarFileHandler = new JarFileHandler();
-
             taskProgress.setMessage("Downloading the pack");
 
             try {
-                // Initiate SFTP connection and download file
-                FtpConnectionManager ftpConnectionManager = FtpConnectionManager.getFtpConnectionManager();
-                ftpConnectionManager.downloadFileFromFtpServer(packName);
-                ftpConnectionManager.closeSftpChannel();
-
-                // Unzip the downloaded file.
-                String zipFilePath = pathToStorage + packName;
-                String filePath = zipFilePath.substring(0, zipFilePath.lastIndexOf('.'));
-                File zipFile = new File(zipFilePath);
-                File dir = new File(filePath);
-                taskProgress.setMessage("Unzipping the pack");
-                ZipHandler.unzip(zipFile.getAbsolutePath(), dir.getAbsolutePath());
-
-                // Extract jars from the pack.
-                taskProgress.setMessage("Extracting jars");
-                PackDetails packDetails = jarFileHandler.extractJarsRecursively(filePath);
-                taskProgress.setMessage("JarFile.java extraction complete");
-                log.info("JarFile.java extraction complete");
-                taskProgress.setStatus(Constants.COMPLETE);
-                taskProgress.setData(packDetails);
+                // Wait for a pre-scan of the pack which is still running instead of scanning the pack again.
+                PackDetails packDetails = PackPrescanner.getPackPrescanner().take(packName, true);
+                if (packDetails == null) {
+                    packDetails = scanUploadedPack(taskProgress, packName);
+                } else {
+                    publishLibraries(taskProgress, packDetails);
+                }
+                completeExtraction(taskProgress, packDetails);
 
             } catch (LicenseManagerConfigurationException e) {
                 taskProgress.setStatus(Constants.FAILED);
                 taskProgress.setMessage("Failed to connect to FTP server");
                 log.info("FTP server error", e);
+            } catch (ScanBudgetExceededException e) {
+                taskProgress.setStatus(Constants.FAILED);
+                taskProgress.setMessage(e.getMessage());
+                log.warn("Extraction Process Failed. " + e.getMessage());
             } catch (LicenseManagerRuntimeException e) {
                 taskProgress.setStatus(Constants.FAILED);
                 taskProgress.setMessage("Pack contains corrupted Files, Please re-upload a different pack");
                 log.info("Extraction Process Failed", e);
+            } catch (RuntimeException e) {
+                // Never leave the task running, which would hold the pre-scans back.
+                taskProgress.setStatus(Constants.FAILED);
+                taskProgress.setMessage("Failed to extract the jars of the pack");
+                log.error("Extraction Process Failed", e);
             }
         }).start();
 
         return taskProgress;
     }
 
+    /**
+     * Download and scan an uploaded pack. A pack on a local pack source is scanned in place, any other pack is
+     * taken from the pack cache or downloaded into it.
+     *
+     * @param taskProgress progress of the task
+     * @param packName     name of the pack
+     * @return details of the pack
+     * @throws LicenseManagerConfigurationException if the pack cannot be downloaded
+     * @throws LicenseManagerRuntimeException       if scanning the pack fails or exceeds the budget
+     */
+    public PackDetails scanUploadedPack(TaskProgress taskProgress, String packName)
+            throws LicenseManagerConfigurationException, LicenseManagerRuntimeException {
+
+        PackSource packSource = PackSourceFactory.getPackSource();
+        String pathToStorage = SystemVariableUtil.getValue(Constants.FILE_DOWNLOAD_PATH, null);
+        String scanMode = SystemVariableUtil.getValue(Constants.SCAN_MODE, Constants.SCAN_MODE_ARCHIVE);
+        File localPack = packSource.getLocalFile(packName);
+        if (localPack != null) {
+            // Scan the pack where it is, without copying it.
+            return getPackDetails(taskProgress, packName, localPack.getPath(), pathToStorage);
+        }
+
+        // Download the pack unless the same pack is in the pack cache. In the pipeline mode the pack is scanned
+        // while it is downloaded.
+        UploadedPack uploadedPack = packSource.getPack(packName);
+        PackDetails[] scannedPackDetails = new PackDetails[1];
+        try (PackCache.Lease lease = PackCache.getPackCache().acquire(packSource.getLocation(packName), packName,
+                uploadedPack.getSize(), uploadedPack.getLastModified(), target -> {
+                    if (Constants.SCAN_MODE_PIPELINE.equals(scanMode)) {
+                        scannedPackDetails[0] = scanPackWhileDownloading(taskProgress, packSource, packName,
+                                target.getPath());
+                    } else {
+                        packSource.download(packName, target);
+                    }
+                })) {
+            if (!lease.isCached()) {
+                StorageJanitor.getStorageJanitor().track(taskProgress.getStorageKey(), lease.getFile());
+            }
+            return (scannedPackDetails[0] != null) ? scannedPackDetails[0] :
+                    getPackDetails(taskProgress, packName, lease.getFile().getPath(), pathToStorage);
+        }
+    }
+
+    private static void completeExtraction(TaskProgress taskProgress, PackDetails packDetails) {
+
+        taskProgress.setMessage("JarFile.java extraction complete");
+        log.info("JarFile.java extraction complete");
+        taskProgress.setStatus(Constants.COMPLETE);
+        taskProgress.setData(packDetails);
+    }
+
+    private static void publishLibraries(TaskProgress taskProgress, PackDetails packDetails) {
+
+        packDetails.getLibFilesInPack().forEach(taskProgress::publishLibrary);
+        packDetails.getFaultyNamedLibs().forEach(taskProgress::publishLibrary);
+    }
+
+    /**
+     * Get the details of a downloaded pack, reusing the results of an earlier scan of the same content.
+     *
+     * @param taskProgress  progress of the task
+     * @param packName      name of the pack
+     * @param zipFilePath   path to the downloaded pack
+     * @param pathToStorage path to unzip the pack to
+     * @return details of the pack
+     * @throws LicenseManagerRuntimeException if scanning the pack fails or exceeds the budget
+     */
+    private PackDetails getPackDetails(TaskProgress taskProgress, String packName, String zipFilePath,
+                                       String pathToStorage) throws LicenseManagerRuntimeException {
+
+        PackDetailsStore packDetailsStore = PackDetailsStore.getPackDetailsStore();
+        String packChecksum = PackDetailsStore.checksum(new File(zipFilePath));
+        PackDetails packDetails = packDetailsStore.load(packName, packChecksum);
+        if (packDetails != null) {
+            log.info("Reusing the stored details of " + packName + " with checksum " + packChecksum);
+            publishLibraries(taskProgress, packDetails);
+        } else {
+            int extensionIndex = packName.lastIndexOf('.');
+            String unzipFolder = pathToStorage +
+                    (extensionIndex > 0 ? packName.substring(0, extensionIndex) : packName);
+            packDetails = scanPack(taskProgress, zipFilePath, unzipFolder);
+            packDetailsStore.save(packName, packChecksum, packDetails);
+        }
+        return packDetails;
+    }
+
+    /**
+     * Download the pack and scan it at the same time. The downloaded bytes are written to the file of the pack and
+     * handed to the scan through a bounded queue, so the task takes about as long as the slower of the two. If the
+     * pack cannot be read as a stream, the scan waits for the download and reads the jars from the file instead.
+     *
+     * @param taskProgress progress of the task
+     * @param packSource   source of the pack
+     * @param packName     name of the pack
+     * @param zipFilePath  path to download the pack to
+     * @return details of the pack
+     * @throws LicenseManagerConfigurationException if the pack cannot be downloaded
+     * @throws LicenseManagerRuntimeException       if scanning the pack fails or exceeds the budget
+     */
+    private PackDetails scanPackWhileDownloading(TaskProgress taskProgress, PackSource packSource, String packName,
+                                                 String zipFilePath)
+            throws LicenseManagerConfigurationException, LicenseManagerRuntimeException {
+
+        int queueChunks = Integer.parseInt(SystemVariableUtil.getValue(Constants.SCAN_PIPELINE_QUEUE_CHUNKS,
+                String.valueOf(Constants.DEFAULT_SCAN_PIPELINE_QUEUE_CHUNKS)));
+        PipelineStatistics statistics = new PipelineStatistics();
+        taskProgress.setPipelineStatistics(statistics);
+
+        // A library is published once, even if the scan falls back to the downloaded pack.
+        Set<String> publishedLibraries = ConcurrentHashMap.newKeySet();
+        Consumer<LibraryDetails> libraryListener = library -> {
+            if (publishedLibraries.add(library.getArchivePath())) {
+                taskProgress.publishLibrary(library);
+            }
+        };
+        JarFileHandler jarFileHandler = new JarFileHandler(ScanBudget.fromEnvironment());
+        jarFileHandler.setLibraryListener(libraryListener);
+        File zipFile = new File(zipFilePath);
+        File spillDirectory = createSpillDirectory(taskProgress);
+
+        try (InputStream packStream = packSource.open(packName);
+             PackDownloadPipe pipe = new PackDownloadPipe(packStream, zipFile, queueChunks, statistics)) {
+            pipe.start();
+            taskProgress.setMessage("Downloading and extracting jars");
+            PackDetails packDetails;
+            try {
+                packDetails = jarFileHandler.extractJarsFromStream(packName, pipe.getStream(), spillDirectory,
+                        statistics);
+            } catch (ScanBudgetExceededException e) {
+                throw e;
+            } catch (LicenseManagerRuntimeException e) {
+                if (pipe.getFailure() != null) {
+                    throw pipe.getFailure();
+                }
+                if (!(e.getCause() instanceof ZipException)) {
+                    throw e;
+                }
+                // Entries such as stored entries with a data descriptor cannot be read from a stream.
+                log.warn("Failed to scan " + packName + " while downloading, scanning the downloaded pack instead. " +
+                        e.getCause().getMessage());
+                pipe.detach();
+                pipe.awaitChecksum();
+                taskProgress.setMessage("Extracting jars");
+                JarFileHandler fallbackJarFileHandler = new JarFileHandler(ScanBudget.fromEnvironment());
+                fallbackJarFileHandler.setLibraryListener(libraryListener);
+                packDetails = fallbackJarFileHandler.extractJarsFromArchive(zipFilePath, spillDirectory);
+            }
+
+            // Let the download run to the end of the file, past the part read by the scan.
+            pipe.detach();
+            PackDetailsStore.getPackDetailsStore().save(packName, pipe.awaitChecksum(), packDetails);
+            return packDetails;
+        } catch (IOException e) {
+            throw new LicenseManagerConfigurationException("Failed to download the pack " + packName, e);
+        }
+    }
+
+    /**
+     * Scan the jars of a downloaded pack within the budget of the task.
+     *
+     * @param taskProgress progress of the task
+     * @param zipFilePath  path to the downloaded pack
+     * @param filePath     path to unzip the pack to, in the extract mode
+     * @return details of the pack
+     * @throws LicenseManagerRuntimeException if scanning the pack fails or exceeds the budget
+     */
+    private PackDetails scanPack(TaskProgress taskProgress, String zipFilePath, String filePath)
+            throws LicenseManagerRuntimeException {
+
+        String scanMode = SystemVariableUtil.getValue(Constants.SCAN_MODE, Constants.SCAN_MODE_ARCHIVE);
+
+        // The budget covers unzipping and scanning, but not the download.
+        ScanBudget scanBudget = ScanBudget.fromEnvironment();
+        JarFileHandler jarFileHandler = new JarFileHandler(scanBudget);
+        jarFileHandler.setLibraryListener(taskProgress::publishLibrary);
+        PackDetails packDetails;
+
+        if (Constants.SCAN_MODE_EXTRACT.equals(scanMode)) {
+            // Unzip the downloaded file.
+            File zipFile = new File(zipFilePath);
+            File dir = new File(filePath);
+            StorageJanitor.getStorageJanitor().track(taskProgress.getStorageKey(), dir);
+            try {
+                taskProgress.setMessage("Unzipping the pack");
+                ZipHandler.unzip(zipFile.getAbsolutePath(), dir.getAbsolutePath(), scanBudget);
+
+                // Extract jars from the pack.
+                taskProgress.setMessage("Extracting jars");
+                packDetails = jarFileHandler.extractJarsRecursively(filePath, zipFilePath);
+            } catch (ScanBudgetExceededException e) {
+                // Do not leave a partially extracted pack behind.
+                ZipHandler.deleteFolder(filePath);
+                throw e;
+            }
+        } else {
+            // Read the jars straight from the downloaded file.
+            taskProgress.setMessage("Extracting jars");
+            packDetails = jarFileHandler.extractJarsFromArchive(zipFilePath, createSpillDirectory(taskProgress));
+        }
+        return packDetails;
+    }
+
+    /**
+     * Create a folder for the jars which are too large to be kept in memory while a pack is scanned. The folder is
+     * kept apart from the pack, which may be in the pack cache or in a source folder the service does not own, and
+     * it is deleted when the task is released.
+     *
+     * @param taskProgress progress of the task
+     * @return the new folder in the download path
+     * @throws LicenseManagerRuntimeException if the folder cannot be created
+     */
+    private static File createSpillDirectory(TaskProgress taskProgress) throws LicenseManagerRuntimeException {
+
+        String pathToStorage = SystemVariableUtil.getValue(Constants.FILE_DOWNLOAD_PATH, null);
+        try {
+            File spillDirectory = (pathToStorage == null) ?
+                    Files.createTempDirectory(Constants.SPILL_DIRECTORY_PREFIX).toFile() :
+                    Files.createTempDirectory(Files.createDirectories(Paths.get(pathToStorage)),
+                            Constants.SPILL_DIRECTORY_PREFIX).toFile();
+            StorageJanitor.getStorageJanitor().track(taskProgress.getStorageKey(), spillDirectory);
+            return spillDirectory;
+        } catch (IOException e) {
+            throw new LicenseManagerRuntimeException("Failed to create a folder to scan the pack in. ", e);
+        }
+    }
 }
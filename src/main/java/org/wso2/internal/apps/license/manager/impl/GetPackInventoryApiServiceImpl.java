@@ -0,0 +1,104 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.impl;
+
+import com.google.gson.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.internal.apps.license.manager.connector.PackSource;
+import org.wso2.internal.apps.license.manager.connector.PackSourceFactory;
+import org.wso2.internal.apps.license.manager.exception.LicenseManagerConfigurationException;
+import org.wso2.internal.apps.license.manager.exception.LicenseManagerRuntimeException;
+import org.wso2.internal.apps.license.manager.model.UploadedPack;
+import org.wso2.internal.apps.license.manager.util.CentralDirectoryReader;
+import org.wso2.internal.apps.license.manager.util.Constants;
+import org.wso2.internal.apps.license.manager.util.JsonUtils;
+import org.wso2.internal.apps.license.manager.util.PackCache;
+import org.wso2.msf4j.util.SystemVariableUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Implementation of the API service to list the entries of an uploaded pack without extracting it.
+ */
+public class GetPackInventoryApiServiceImpl {
+
+    private static final Logger log = LoggerFactory.getLogger(GetPackInventoryApiServiceImpl.class);
+
+    /**
+     * Get the entries of a pack from its central directory. A pack which is already downloaded is read in place,
+     * as is a pack on a local pack source, otherwise it is taken from the pack cache, downloading it into the cache
+     * if needed. Without the pack cache the pack is downloaded to a file of its own, apart from the packs of the
+     * tasks, and removed once the inventory is read.
+     *
+     * @param packName name of the uploaded pack
+     * @return inventory of the pack
+     * @throws LicenseManagerConfigurationException if the SFTP connection fails
+     * @throws LicenseManagerRuntimeException       if the pack is not a valid zip file
+     */
+    public JsonObject getPackInventory(String packName) throws LicenseManagerConfigurationException,
+            LicenseManagerRuntimeException {
+
+        if (packName.contains("/") || packName.contains("\\") || packName.contains("..")) {
+            throw new LicenseManagerRuntimeException("Invalid pack name " + packName);
+        }
+        String pathToStorage = SystemVariableUtil.getValue(Constants.FILE_DOWNLOAD_PATH, null);
+        File pack = new File(pathToStorage + packName);
+        if (pack.isFile()) {
+            return JsonUtils.getPackInventoryAsJson(CentralDirectoryReader.read(pack));
+        }
+
+        PackSource packSource = PackSourceFactory.getPackSource();
+        File localPack = packSource.getLocalFile(packName);
+        if (localPack != null) {
+            return JsonUtils.getPackInventoryAsJson(CentralDirectoryReader.read(localPack));
+        }
+        PackCache packCache = PackCache.getPackCache();
+        if (!packCache.isEnabled()) {
+            File inventoryPack;
+            try {
+                inventoryPack = Files.createTempFile(Paths.get(pathToStorage), "inventory-", ".zip").toFile();
+            } catch (IOException e) {
+                throw new LicenseManagerRuntimeException("Failed to create a file to download " + packName + " to",
+                        e);
+            }
+            try {
+                packSource.download(packName, inventoryPack);
+                return JsonUtils.getPackInventoryAsJson(CentralDirectoryReader.read(inventoryPack));
+            } finally {
+                if (inventoryPack.exists() && !inventoryPack.delete()) {
+                    log.warn("Failed to delete the pack " + inventoryPack.getAbsolutePath() +
+                            " downloaded for the inventory.");
+                }
+            }
+        }
+
+        UploadedPack uploadedPack = packSource.getPack(packName);
+        try (PackCache.Lease lease = packCache.acquire(packSource.getLocation(packName), packName,
+                uploadedPack.getSize(), uploadedPack.getLastModified(),
+                target -> packSource.download(packName, target))) {
+            return JsonUtils.getPackInventoryAsJson(CentralDirectoryReader.read(lease.getFile()));
+        }
+    }
+}
@@ -23,11 +23,9 @@ package org.wso2.internal.apps.license.manager.impl;
 import com.google.gson.JsonArray;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.wso2.internal.apps.license.manager.connector.FtpConnectionManager;
 import org.wso2.internal.apps.license.manager.exception.LicenseManagerConfigurationException;
 import org.wso2.internal.apps.license.manager.util.JsonUtils;
-
-import java.util.ArrayList;
+import org.wso2.internal.apps.license.manager.util.PackListingCache;
 
 /**
  * Implementation of the API service to list out all the packs uploaded to the FTP server.
@@ -36,6 +34,28 @@ public class GetUploadedPacksApiServiceImpl {
 
     private static final Logger log = LoggerFactory.getLogger(GetUploadedPacksApiServiceImpl.class);
 
+    /**
+     * Get the list of zip packs uploaded to the FTP server, from the snapshot kept by the pack listing cache.
+     *
+     * @return snapshot of the uploaded packs
+     * @throws LicenseManagerConfigurationException if no snapshot is available and the SFTP connection fails
+     */
+    public PackListingCache.Snapshot getListOfPacks() throws LicenseManagerConfigurationException {
+
+        return PackListingCache.getPackListingCache().getSnapshot();
+    }
+
+    /**
+     * List the packs uploaded to the FTP server now, rather than waiting for the next background refresh.
+     *
+     * @return snapshot of the uploaded packs
+     * @throws LicenseManagerConfigurationException if the SFTP connection fails
+     */
+    public PackListingCache.Snapshot refreshListOfPacks() throws LicenseManagerConfigurationException {
+
+        return PackListingCache.getPackListingCache().refresh();
+    }
+
     /**
      * Get the list of zip packs uploaded to the FTP server.
      *
@@ -44,12 +64,6 @@ public class GetUploadedPacksApiServiceImpl {
      */
     public JsonArray getListOfPacksName() throws LicenseManagerConfigurationException {
 
-        ArrayList<String> listOfPacks;
-        JsonArray listOfPacksAsJson;
-        FtpConnectionManager ftpConnectionManager = FtpConnectionManager.getFtpConnectionManager();
-        listOfPacks = ftpConnectionManager.listFilesInFtpServer();
-        ftpConnectionManager.closeSftpChannel();
-        listOfPacksAsJson = JsonUtils.getListOfPacksUploadedAsJson(listOfPacks);
-        return listOfPacksAsJson;
+        return JsonUtils.getListOfPacksUploadedAsJson(getListOfPacks().getPacks());
     }
 }
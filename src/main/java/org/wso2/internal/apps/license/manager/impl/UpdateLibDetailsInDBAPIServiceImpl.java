@@ -24,20 +24,24 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.wso2.internal.apps.license.manager.data.LibraryDAOImpl;
-import org.wso2.internal.apps.license.manager.data.LicenseDAOImpl;
-import org.wso2.internal.apps.license.manager.data.ProductDAOImpl;
+import org.wso2.internal.apps.license.manager.connector.UnitOfWork;
+import org.wso2.internal.apps.license.manager.data.PackIngestDAOImpl;
 import org.wso2.internal.apps.license.manager.exception.LicenseManagerDataException;
 import org.wso2.internal.apps.license.manager.model.LibraryDetails;
 import org.wso2.internal.apps.license.manager.model.PackDetails;
 import org.wso2.internal.apps.license.manager.model.TaskProgress;
 import org.wso2.internal.apps.license.manager.util.Constants;
+import org.wso2.internal.apps.license.manager.util.DuplicateKey;
+import org.wso2.internal.apps.license.manager.util.JarFileHandler;
 import org.wso2.internal.apps.license.manager.util.TaskHandler;
 
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * class update db
@@ -94,12 +98,26 @@ public class UpdateLibDetailsInDBAPIServiceImpl {
      */
     private void updateFaultyNamedListOfJars(PackDetails packDetails, JsonArray jarsWithDefinedNames) {
 
+        // The indexes refer to the unique list shown to the user, so the input applies to all of its duplicates.
+        DuplicateKey duplicateKey = JarFileHandler.getDuplicateKey();
+        Map<String, List<LibraryDetails>> duplicates = new HashMap<>();
+        for (LibraryDetails jarFile : packDetails.getFaultyNamedLibs()) {
+            duplicates.computeIfAbsent(duplicateKey.of(jarFile), key -> new ArrayList<>()).add(jarFile);
+        }
+        List<List<LibraryDetails>> uniqueFaultyNamedJars = new ArrayList<>();
+        for (LibraryDetails jarFile : JarFileHandler.getUniqueFaultyNamedJars(packDetails)) {
+            uniqueFaultyNamedJars.add(duplicates.getOrDefault(duplicateKey.of(jarFile),
+                    Collections.singletonList(jarFile)));
+        }
+
         // Define the name and the version from the user input
         for (int i = 0; i < jarsWithDefinedNames.size(); i++) {
             JsonObject jar = jarsWithDefinedNames.get(i).getAsJsonObject();
             int index = jar.get("index").getAsInt();
-            packDetails.getFaultyNamedLibs().get(index).setName(jar.get("name").getAsString());
-            packDetails.getFaultyNamedLibs().get(index).setVersion(jar.get("version").getAsString());
+            for (LibraryDetails jarFile : uniqueFaultyNamedJars.get(index)) {
+                jarFile.setName(jar.get("name").getAsString());
+                jarFile.setVersion(jar.get("version").getAsString());
+            }
         }
 
         // Add name defined jars into the jar list of the jar holder.
@@ -109,68 +127,53 @@ public class UpdateLibDetailsInDBAPIServiceImpl {
     }
 
     /**
-     * Recursively insert the information of all jars extracted from the pack into the database.
+     * Insert the information of all jars extracted from the pack into the database. The libraries are resolved or
+     * created, linked to the product and checked for licenses in batches, all in one transaction.
      *
      * @throws LicenseManagerDataException if the data insertion fails
      */
-    private void enterJarsIntoDB(TaskProgress taskProgress) {
+    private void enterJarsIntoDB(TaskProgress taskProgress) throws LicenseManagerDataException {
 
-        int productID = 0;
         PackDetails packDetails = taskProgress.getData();
-
-        try (ProductDAOImpl productDAO = new ProductDAOImpl()) {
-            productID = productDAO.getProductID(packDetails.getPackName(), packDetails.getPackVersion());
-
-            if (productID < 0) {
-                productID = productDAO.insertProduct(packDetails.getPackName(), packDetails.getPackVersion());
-            }
-        } catch (SQLException | IOException e) {
-            log.info("Error occurred while adding Product", e);
-        }
-
+        List<LibraryDetails> libraries = packDetails.getLibFilesInPack();
         List<LibraryDetails> licenseMissingLibraries = new ArrayList<>();
         List<LibraryDetails> licenseMissingComponents = new ArrayList<>();
 
-        //check if the license available for the jar file x
-        //jar x -> unq(name , ver, type)
-        for (LibraryDetails libraryDetails : packDetails.getLibFilesInPack()) {
-
-            try (ProductDAOImpl productDAO = new ProductDAOImpl()) {
-
-                try (LibraryDAOImpl libraryDAO = new LibraryDAOImpl()) {
-
-                    int prodID = productDAO.getProductID(packDetails.getPackName(), packDetails.getPackVersion());
-                    int libID = libraryDAO.getLibraryID(libraryDetails);
-
-                    productDAO.insertLibraryProduct(libID, prodID);
-
-                    //insert to db if not present
-                    libraryDAO.insertLib(libraryDetails);
+        try (UnitOfWork unitOfWork = UnitOfWork.begin();
+             PackIngestDAOImpl packIngestDAO = new PackIngestDAOImpl()) {
+            int productID = packIngestDAO.getOrInsertProduct(packDetails.getPackName(), packDetails.getPackVersion());
+            int[] libIDs = packIngestDAO.getOrInsertLibraries(libraries);
+            packIngestDAO.insertLibraryProducts(libIDs, productID);
+
+            //check if the license available for the jar file x
+            //jar x -> unq(name , ver, type)
+            boolean[] isLicenseExist = packIngestDAO.checkLicenses(libraries);
+            List<LibraryDetails> unlicensedLibraries = new ArrayList<>();
+            List<String> unlicensedNames = new ArrayList<>();
+            for (int i = 0; i < libraries.size(); i++) {
+                if (!isLicenseExist[i]) {
+                    unlicensedLibraries.add(libraries.get(i));
+                    unlicensedNames.add(libraries.get(i).getName());
                 }
-
-                try (LicenseDAOImpl licenseDAO = new LicenseDAOImpl()) {
-                    //check if license available
-                    boolean isLicenseExist = licenseDAO.checkLicense(libraryDetails);
-
-                    //check logic, type.
-                    if (!isLicenseExist && ("wso2").equals(libraryDetails.getVendor())) {
-                        libraryDetails.setLicenseKey(licenseDAO.getLicenseForAnyVersion(libraryDetails.getName()));
-                        licenseMissingComponents.add(libraryDetails);
-                    } else if (!isLicenseExist) {
-                        licenseMissingLibraries.add(libraryDetails);
-                        libraryDetails.setLicenseKey(licenseDAO.getLicenseForAnyVersion(libraryDetails.getName()));
-                    }
-
+            }
+            List<String> licenseKeys = packIngestDAO.getLicensesForAnyVersion(unlicensedNames);
+            for (int i = 0; i < unlicensedLibraries.size(); i++) {
+                LibraryDetails libraryDetails = unlicensedLibraries.get(i);
+                libraryDetails.setLicenseKey(licenseKeys.get(i));
+                //check logic, type.
+                if (("wso2").equals(libraryDetails.getVendor())) {
+                    licenseMissingComponents.add(libraryDetails);
+                } else {
+                    licenseMissingLibraries.add(libraryDetails);
                 }
-
-            } catch (SQLException e) {
-                log.info("SQL error occurred", e);
-            } catch (IOException e) {
-                log.info("IO error occurred", e);
             }
+            unitOfWork.commit();
+            packDetails.setPackId(productID);
+        } catch (SQLException | IOException e) {
+            throw new LicenseManagerDataException("Failed to add the libraries of the pack " +
+                    packDetails.getPackName() + " into the database.", e);
         }
 
-        packDetails.setPackId(productID);
         packDetails.setLicenseMissingComponentLibraries(licenseMissingComponents);
         packDetails.setLicenseMissingLibraries(licenseMissingLibraries);
 
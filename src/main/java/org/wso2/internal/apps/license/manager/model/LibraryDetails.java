@@ -20,8 +20,6 @@
 
 package org.wso2.internal.apps.license.manager.model;
 
-import java.io.File;
-
 /**
  * * This class contains properties and operations related to a Library (Jar)
  */
@@ -34,7 +32,8 @@ public class LibraryDetails {
     private String vendor;
     private String fileName;
     private String licenseKey;
-    private File jarContent;
+    private String archivePath;
+    private String checksum;
     private LibraryDetails parent;
     private boolean isBundle = false;
     private boolean isValidName = false;
@@ -99,14 +98,24 @@ public class LibraryDetails {
         this.fileName = fileName;
     }
 
-    public File getJarContent() {
+    public String getArchivePath() {
+
+        return archivePath;
+    }
+
+    public void setArchivePath(String archivePath) {
+
+        this.archivePath = archivePath;
+    }
+
+    public String getChecksum() {
 
-        return jarContent;
+        return checksum;
     }
 
-    public void setJarContent(File jarContent) {
+    public void setChecksum(String checksum) {
 
-        this.jarContent = jarContent;
+        this.checksum = checksum;
     }
 
     public LibraryDetails getParent() {
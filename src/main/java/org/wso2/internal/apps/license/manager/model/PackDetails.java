@@ -33,6 +33,9 @@ public class PackDetails {
     //all libs with faulty name.
     private List<LibraryDetails> faultyNamedLibs;
 
+    //libs with faulty name, without the duplicates.
+    private List<LibraryDetails> uniqueFaultyNamedLibs;
+
     //all libs with unidentified license.
     private List<LibraryDetails> licenseMissingLibraries;
 
@@ -63,6 +66,16 @@ public class PackDetails {
         this.faultyNamedLibs = faultyNamedLibs;
     }
 
+    public List<LibraryDetails> getUniqueFaultyNamedLibs() {
+
+        return uniqueFaultyNamedLibs;
+    }
+
+    public void setUniqueFaultyNamedLibs(List<LibraryDetails> uniqueFaultyNamedLibs) {
+
+        this.uniqueFaultyNamedLibs = uniqueFaultyNamedLibs;
+    }
+
     public List<LibraryDetails> getLicenseMissingLibraries() {
 
         return licenseMissingLibraries;
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.internal.apps.license.manager.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Java object to observe the stages of a pack which is downloaded and scanned as a pipeline.
+ */
+public class PipelineStatistics {
+
+    private final AtomicLong downloadedBytes = new AtomicLong();
+    private final AtomicInteger downloadQueueDepth = new AtomicInteger();
+    private final AtomicInteger scanQueueDepth = new AtomicInteger();
+    private final AtomicInteger scannedJars = new AtomicInteger();
+
+    /**
+     * @return bytes received from the FTP server so far
+     */
+    public AtomicLong getDownloadedBytes() {
+
+        return downloadedBytes;
+    }
+
+    /**
+     * @return chunks downloaded but not yet read by the unzip stage
+     */
+    public AtomicInteger getDownloadQueueDepth() {
+
+        return downloadQueueDepth;
+    }
+
+    /**
+     * @return direct jars unzipped but not yet scanned
+     */
+    public AtomicInteger getScanQueueDepth() {
+
+        return scanQueueDepth;
+    }
+
+    /**
+     * @return direct jars scanned so far
+     */
+    public AtomicInteger getScannedJars() {
+
+        return scannedJars;
+    }
+}
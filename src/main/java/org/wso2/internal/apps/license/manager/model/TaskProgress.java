@@ -17,6 +17,10 @@
  */
 package org.wso2.internal.apps.license.manager.model;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Java object to store the progress of a task.
  */
@@ -26,10 +30,12 @@ public class TaskProgress {
     private int stepNumber;
     private long executingThreadId;
     private String taskId;
-    private String status;
+    private volatile String status;
     private String message;
     private PackDetails data;
+    private PipelineStatistics pipelineStatistics;
     private String packName;
+    private final List<LibraryDetails> discoveredLibraries = new ArrayList<>();
 
     public TaskProgress(String username, String taskId, String status, String packName) {
 
@@ -118,4 +124,48 @@ public class TaskProgress {
 
         this.packName = packName;
     }
+
+    /**
+     * @return key under which the scratch artifacts of the task are tracked, the name of the pack
+     */
+    public String getStorageKey() {
+
+        return packName;
+    }
+
+    public PipelineStatistics getPipelineStatistics() {
+
+        return pipelineStatistics;
+    }
+
+    public void setPipelineStatistics(PipelineStatistics pipelineStatistics) {
+
+        this.pipelineStatistics = pipelineStatistics;
+    }
+
+    /**
+     * Publish a library found while the pack is scanned.
+     *
+     * @param library library found in the pack
+     */
+    public void publishLibrary(LibraryDetails library) {
+
+        synchronized (discoveredLibraries) {
+            discoveredLibraries.add(library);
+        }
+    }
+
+    /**
+     * @param offset number of libraries already received
+     * @return libraries published since the offset, in the order they were published
+     */
+    public List<LibraryDetails> getLibrariesSince(int offset) {
+
+        synchronized (discoveredLibraries) {
+            if (offset >= discoveredLibraries.size()) {
+                return Collections.emptyList();
+            }
+            return new ArrayList<>(discoveredLibraries.subList(Math.max(0, offset), discoveredLibraries.size()));
+        }
+    }
 }
@@ -0,0 +1,56 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.model;
+
+/**
+ * A pack uploaded to the FTP server, as listed in the upload location.
+ */
+public class UploadedPack {
+
+    private final String name;
+    private final long size;
+    private final long lastModified;
+
+    public UploadedPack(String name, long size, long lastModified) {
+
+        this.name = name;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    public String getName() {
+
+        return name;
+    }
+
+    public long getSize() {
+
+        return size;
+    }
+
+    /**
+     * @return modification time of the pack in seconds since the epoch
+     */
+    public long getLastModified() {
+
+        return lastModified;
+    }
+}
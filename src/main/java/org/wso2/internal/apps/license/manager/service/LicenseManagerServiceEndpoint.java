@@ -24,20 +24,26 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wso2.internal.apps.license.manager.exception.LicenseManagerConfigurationException;
 import org.wso2.internal.apps.license.manager.exception.LicenseManagerDataException;
+import org.wso2.internal.apps.license.manager.exception.LicenseManagerRuntimeException;
 import org.wso2.internal.apps.license.manager.impl.AddLicenseServiceAPIImpl;
 import org.wso2.internal.apps.license.manager.impl.ExtractPackServiceImpl;
 import org.wso2.internal.apps.license.manager.impl.GenerateLicenseFileServiceImpl;
 import org.wso2.internal.apps.license.manager.impl.GetLicenseServiceImpl;
+import org.wso2.internal.apps.license.manager.impl.GetPackInventoryApiServiceImpl;
 import org.wso2.internal.apps.license.manager.impl.GetUploadedPacksApiServiceImpl;
 import org.wso2.internal.apps.license.manager.impl.UpdateLibDetailsInDBAPIServiceImpl;
 import org.wso2.internal.apps.license.manager.model.LibraryDetails;
 import org.wso2.internal.apps.license.manager.model.PackDetails;
 import org.wso2.internal.apps.license.manager.model.TaskProgress;
 import org.wso2.internal.apps.license.manager.util.Constants;
+import org.wso2.internal.apps.license.manager.util.FileStreamingResponse;
 import org.wso2.internal.apps.license.manager.util.JarFileHandler;
 import org.wso2.internal.apps.license.manager.util.JsonUtils;
+import org.wso2.internal.apps.license.manager.util.LibraryMetadataCache;
+import org.wso2.internal.apps.license.manager.util.PackListingCache;
+import org.wso2.internal.apps.license.manager.util.PackPrescanner;
+import org.wso2.internal.apps.license.manager.util.StorageJanitor;
 import org.wso2.internal.apps.license.manager.util.TaskHandler;
-import org.wso2.internal.apps.license.manager.util.ZipHandler;
 import org.wso2.msf4j.Request;
 import org.wso2.msf4j.util.SystemVariableUtil;
 
@@ -47,12 +53,14 @@ import java.nio.file.Paths;
 import java.util.List;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
@@ -65,35 +73,135 @@ public class LicenseManagerServiceEndpoint {
 
     private static final Logger log = LoggerFactory.getLogger(LicenseManagerServiceEndpoint.class);
     private GetUploadedPacksApiServiceImpl getUploadedPacksService = new GetUploadedPacksApiServiceImpl();
+    private GetPackInventoryApiServiceImpl getPackInventoryService = new GetPackInventoryApiServiceImpl();
     private UpdateLibDetailsInDBAPIServiceImpl updateLibDetails = new UpdateLibDetailsInDBAPIServiceImpl();
     private ExtractPackServiceImpl extractPackService = new ExtractPackServiceImpl();
     private AddLicenseServiceAPIImpl licenseServiceAPI = new AddLicenseServiceAPIImpl();
     private GetLicenseServiceImpl getLicenseService = new GetLicenseServiceImpl();
     private GenerateLicenseFileServiceImpl generateLicenseFile = new GenerateLicenseFileServiceImpl();
     private static final String ACCESS_CONTROL_HEADER = "Access-Control-Allow-Credentials";
+    private static final String RANGE_HEADER = "Range";
+    private static final String IF_RANGE_HEADER = "If-Range";
 
+    public LicenseManagerServiceEndpoint() {
+
+        // Pre-scan newly uploaded packs in the background, if enabled.
+        PackPrescanner.getPackPrescanner().start(extractPackService::scanUploadedPack);
+    }
+
+    /**
+     * Get the packs uploaded to the FTP server. The list is served from a snapshot which is refreshed in the
+     * background, and a client which sends the entity tag of the snapshot it has gets 304 Not Modified.
+     *
+     * @param ifNoneMatch entity tags the client already has
+     * @return The API response
+     */
     @GET
     @Path("/pack/uploadedPacks")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getAllUploadedPacks() {
+    public Response getAllUploadedPacks(@HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
+
+        try {
+            // Obtain the list of the available zip files.
+            PackListingCache.Snapshot snapshot = getUploadedPacksService.getListOfPacks();
+            if (snapshot.matches(ifNoneMatch)) {
+                return Response.notModified().header(HttpHeaders.ETAG, snapshot.getETag())
+                        .header(ACCESS_CONTROL_HEADER, true).build();
+            }
+            return getUploadedPacksResponse(snapshot);
+        } catch (LicenseManagerConfigurationException e) {
+            log.error("Failed to get the list of uploaded packs. ", e);
+            return getUploadedPacksErrorResponse(e);
+        }
+    }
+
+    /**
+     * List the packs uploaded to the FTP server now, rather than waiting for the next background refresh.
+     *
+     * @return The API response
+     */
+    @POST
+    @Path("/pack/uploadedPacks/refresh")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response refreshUploadedPacks() {
+
+        try {
+            return getUploadedPacksResponse(getUploadedPacksService.refreshListOfPacks());
+        } catch (LicenseManagerConfigurationException e) {
+            log.error("Failed to refresh the list of uploaded packs. ", e);
+            return getUploadedPacksErrorResponse(e);
+        }
+    }
+
+    private Response getUploadedPacksResponse(PackListingCache.Snapshot snapshot) {
+
+        JsonObject responseJson = new JsonObject();
+        responseJson.addProperty(Constants.RESPONSE_TYPE, Constants.SUCCESS);
+        responseJson.addProperty(Constants.RESPONSE_MESSAGE, "List of uploaded packs were retrieved.");
+        responseJson.add(Constants.RESPONSE_DATA, JsonUtils.getListOfPacksUploadedAsJson(snapshot.getPacks()));
+        return Response.ok(responseJson, MediaType.APPLICATION_JSON).header(HttpHeaders.ETAG, snapshot.getETag())
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache").header(ACCESS_CONTROL_HEADER, true).build();
+    }
+
+    private Response getUploadedPacksErrorResponse(LicenseManagerConfigurationException e) {
+
+        JsonObject responseJson = new JsonObject();
+        responseJson.addProperty(Constants.RESPONSE_TYPE, Constants.ERROR);
+        responseJson.addProperty(Constants.RESPONSE_MESSAGE, e.getMessage());
+        return Response.ok(responseJson, MediaType.APPLICATION_JSON).header(ACCESS_CONTROL_HEADER, true).build();
+    }
+
+    /**
+     * Get the entries of an uploaded pack, read from its central directory without extracting the pack.
+     *
+     * @param packName name of the uploaded pack
+     * @return The API response
+     */
+    @GET
+    @Path("/pack/inventory/{packName}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getPackInventory(@PathParam("packName") String packName) {
 
         JsonObject responseJson = new JsonObject();
 
         try {
-            // Obtain the list of the available zip files.
-            JsonArray responseData = getUploadedPacksService.getListOfPacksName();
+            JsonObject responseData = getPackInventoryService.getPackInventory(packName);
             responseJson.addProperty(Constants.RESPONSE_TYPE, Constants.SUCCESS);
-            responseJson.addProperty(Constants.RESPONSE_MESSAGE, "List of uploaded packs were retrieved.");
+            responseJson.addProperty(Constants.RESPONSE_MESSAGE, "Inventory of the pack was retrieved.");
             responseJson.add(Constants.RESPONSE_DATA, responseData);
-        } catch (LicenseManagerConfigurationException e) {
+        } catch (LicenseManagerConfigurationException | LicenseManagerRuntimeException e) {
             responseJson.addProperty(Constants.RESPONSE_TYPE, Constants.ERROR);
             responseJson.addProperty(Constants.RESPONSE_MESSAGE, e.getMessage());
-            log.error("Failed to get the list of uploaded packs. ", e);
+            log.error("Failed to get the inventory of the pack " + packName + ". ", e);
         }
 
         return Response.ok(responseJson, MediaType.APPLICATION_JSON).header(ACCESS_CONTROL_HEADER, true).build();
     }
 
+    /**
+     * Get the hit and miss counters of the library metadata cache shared across the pack scans.
+     *
+     * @return The API response
+     */
+    @GET
+    @Path("/pack/libraryCache")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getLibraryCacheStatistics() {
+
+        LibraryMetadataCache libraryMetadataCache = LibraryMetadataCache.getLibraryMetadataCache();
+        JsonObject responseData = new JsonObject();
+        responseData.addProperty("libraries", libraryMetadataCache.size());
+        responseData.addProperty("hits", libraryMetadataCache.getHits());
+        responseData.addProperty("misses", libraryMetadataCache.getMisses());
+
+        JsonObject responseJson = new JsonObject();
+        responseJson.addProperty(Constants.RESPONSE_TYPE, Constants.SUCCESS);
+        responseJson.addProperty(Constants.RESPONSE_MESSAGE, "Library metadata cache statistics were retrieved.");
+        responseJson.add(Constants.RESPONSE_DATA, responseData);
+
+        return Response.ok(responseJson, MediaType.APPLICATION_JSON).header(ACCESS_CONTROL_HEADER, true).build();
+    }
+
     /**
      * Start the downloading and extracting the selected pack in a new thread.
      *
@@ -139,6 +247,42 @@ public class LicenseManagerServiceEndpoint {
 //        }
     }
 
+    /**
+     * Get the libraries found in a pack since a given offset. Libraries are published while the pack is still
+     * scanned, so the client can poll with the returned next offset until the task is complete.
+     *
+     * @param packName name of the pack
+     * @param offset   number of libraries already received
+     * @return The API response
+     */
+    @GET
+    @Path("/pack/libraries/{packName}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getLibrariesSince(@PathParam("packName") String packName, @QueryParam("offset") int offset) {
+
+        TaskProgress taskProgress = TaskHandler.getTaskByPackName(packName);
+        JsonObject responseJson = new JsonObject();
+
+        if (taskProgress == null) {
+            responseJson.addProperty(Constants.RESPONSE_TYPE, Constants.ERROR);
+            responseJson.addProperty(Constants.RESPONSE_MESSAGE, "No task is found for the pack " + packName);
+        } else {
+            // Read the status first, so that a complete status guarantees that every library was published.
+            String status = taskProgress.getStatus();
+            List<LibraryDetails> libraries = taskProgress.getLibrariesSince(offset);
+            JsonObject responseData = new JsonObject();
+            responseData.add("libraries", JsonUtils.getPublishedLibrariesAsJsonArray(libraries,
+                    Math.max(0, offset)));
+            responseData.addProperty("nextOffset", Math.max(0, offset) + libraries.size());
+            responseJson.addProperty(Constants.RESPONSE_TYPE, Constants.SUCCESS);
+            responseJson.addProperty(Constants.RESPONSE_STATUS, status);
+            responseJson.addProperty(Constants.RESPONSE_MESSAGE, taskProgress.getMessage());
+            responseJson.add(Constants.RESPONSE_DATA, responseData);
+        }
+
+        return Response.ok(responseJson, MediaType.APPLICATION_JSON).header(ACCESS_CONTROL_HEADER, true).build();
+    }
+
     /**
      * Get the jars with name and version unidentified.
      *
@@ -159,7 +303,7 @@ public class LicenseManagerServiceEndpoint {
 
         if (taskProgress.getStatus().equals(Constants.COMPLETE)) {
             List<LibraryDetails> errorJarFileList =
-                    JarFileHandler.removeDuplicates(taskProgress.getData().getFaultyNamedLibs());
+                    JarFileHandler.getUniqueFaultyNamedJars(taskProgress.getData());
             faultyNamedJars = JsonUtils.getFaultyNamedJarsAsJsonArray(errorJarFileList);
             responseJson.addProperty(Constants.RESPONSE_TYPE, Constants.SUCCESS);
             responseJson.addProperty(Constants.RESPONSE_MESSAGE, statusMessage);
@@ -238,12 +382,59 @@ public class LicenseManagerServiceEndpoint {
                 responseJson.addProperty(Constants.RESPONSE_STATUS, Constants.FAILED);
                 responseJson.addProperty(Constants.RESPONSE_MESSAGE, statusMessage);
                 TaskHandler.deleteTaskByPackName(packName);
+                StorageJanitor.getStorageJanitor().release(packName);
                 break;
         }
 
         return Response.ok(responseJson, MediaType.APPLICATION_JSON).header(ACCESS_CONTROL_HEADER, true).build();
     }
 
+    /**
+     * Get the statistics of a pack which is downloaded and scanned as a pipeline.
+     *
+     * @param packName name of the pack
+     * @return The API response
+     */
+    @GET
+    @Path("/longRunningTask/pipeline/{packName}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getPipelineStatistics(@PathParam("packName") String packName) {
+
+        TaskProgress taskProgress = TaskHandler.getTaskByPackName(packName);
+        JsonObject responseJson = new JsonObject();
+
+        if (taskProgress == null || taskProgress.getPipelineStatistics() == null) {
+            responseJson.addProperty(Constants.RESPONSE_TYPE, Constants.ERROR);
+            responseJson.addProperty(Constants.RESPONSE_MESSAGE, "No pipeline is found for the pack " + packName);
+        } else {
+            responseJson.addProperty(Constants.RESPONSE_TYPE, Constants.SUCCESS);
+            responseJson.addProperty(Constants.RESPONSE_STATUS, taskProgress.getStatus());
+            responseJson.addProperty(Constants.RESPONSE_MESSAGE, taskProgress.getMessage());
+            responseJson.add(Constants.RESPONSE_DATA,
+                    JsonUtils.getPipelineStatisticsAsJson(taskProgress.getPipelineStatistics()));
+        }
+
+        return Response.ok(responseJson, MediaType.APPLICATION_JSON).header(ACCESS_CONTROL_HEADER, true).build();
+    }
+
+    /**
+     * Get the statistics of the storage janitor, including the bytes reclaimed so far.
+     *
+     * @return The API response
+     */
+    @GET
+    @Path("/storage/janitor")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getStorageJanitorStatistics() {
+
+        JsonObject responseJson = new JsonObject();
+        responseJson.addProperty(Constants.RESPONSE_TYPE, Constants.SUCCESS);
+        responseJson.add(Constants.RESPONSE_DATA,
+                JsonUtils.getStorageJanitorStatisticsAsJson(StorageJanitor.getStorageJanitor()));
+
+        return Response.ok(responseJson, MediaType.APPLICATION_JSON).header(ACCESS_CONTROL_HEADER, true).build();
+    }
+
     /**
      * Get the jars for which the licenses are undefined.
      *
@@ -362,6 +553,9 @@ public class LicenseManagerServiceEndpoint {
             productName = packDetails.getPackName();
             productVersion = packDetails.getPackVersion();
             generateLicenseFile.generateLicenseFile(productName, productVersion, fileUploadPath);
+            // Keep the license text out of the quota sweep until it is downloaded and the task is released.
+            StorageJanitor.getStorageJanitor().track(selectedPack, new File(fileUploadPath,
+                    "LICENSE-" + productName + "-" + productVersion + ".txt"));
             responseJson.addProperty(Constants.RESPONSE_TYPE, Constants.SUCCESS);
             responseJson.addProperty(Constants.RESPONSE_MESSAGE, "Done");
         } catch (IOException e) {
@@ -378,29 +572,58 @@ public class LicenseManagerServiceEndpoint {
     }
 
     /**
-     * Request to download the license text file.
+     * Request to download the license text file. The file is streamed, compressed with gzip if the client accepts
+     * it, and can be fetched in ranges and conditionally. The storage of the task is cleaned once the whole file has
+     * been sent, in one response or in ranges, so an interrupted download can be resumed with a range request.
      *
-     * @param request  GET request
-     * @param username logged user
+     * @param request         GET request
+     * @param username        logged user
+     * @param packName        name of the pack
+     * @param range           range of bytes to send
+     * @param ifRange         entity tag or date the range is valid for
+     * @param ifNoneMatch     entity tags the client already has
+     * @param ifModifiedSince time of the copy the client already has
+     * @param acceptEncoding  encodings accepted by the client
      * @return the license text file
      */
     @GET
     @Path("/license/download/{packname}")
-    public Response getLicenseTextFile(@Context Request request, @QueryParam("username") String username, @PathParam(
-            "packname") String packName) {
+    public Response getLicenseTextFile(@Context Request request, @QueryParam("username") String username,
+                                       @PathParam("packname") String packName,
+                                       @HeaderParam(RANGE_HEADER) String range,
+                                       @HeaderParam(IF_RANGE_HEADER) String ifRange,
+                                       @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+                                       @HeaderParam(HttpHeaders.IF_MODIFIED_SINCE) String ifModifiedSince,
+                                       @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
 
         String mountPath = SystemVariableUtil.getValue(Constants.FILE_DOWNLOAD_PATH, null);
-        PackDetails packDetails = TaskHandler.getTaskByPackName(packName).getData();
+        TaskProgress taskProgress = TaskHandler.getTaskByPackName(packName);
+        if (taskProgress == null || taskProgress.getData() == null) {
+            log.error("No extracted pack is found for " + packName);
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        PackDetails packDetails = taskProgress.getData();
         String productName = packDetails.getPackName();
         String productVersion = packDetails.getPackVersion();
         String fileName = "LICENSE-" + productName + "-" + productVersion + ".txt";
         File file = Paths.get(mountPath, fileName).toFile();
         if (file.exists()) {
-            // Clean the storage.
-            ZipHandler.cleanFileStorage(productName + "-" + productVersion, mountPath);
-            TaskHandler.deleteTaskByPackName(packName);
-
-            return Response.ok(file).header(ACCESS_CONTROL_HEADER, true).build();
+            Runnable cleanStorage = () -> {
+                if (TaskHandler.getTaskByPackName(packName) != taskProgress) {
+                    // Another download of the file has already cleaned the storage.
+                    return;
+                }
+                TaskHandler.deleteTaskByPackName(packName);
+                // Clean the storage in the background.
+                StorageJanitor storageJanitor = StorageJanitor.getStorageJanitor();
+                storageJanitor.track(packName, new File(mountPath, productName + "-" + productVersion + ".zip"));
+                storageJanitor.track(packName, new File(mountPath, productName + "-" + productVersion));
+                storageJanitor.release(packName);
+                storageJanitor.removeFromPackSource(productName + "-" + productVersion);
+            };
+
+            return FileStreamingResponse.create(file, range, ifRange, ifNoneMatch, ifModifiedSince, acceptEncoding,
+                    cleanStorage).header(ACCESS_CONTROL_HEADER, true).build();
         } else {
             log.error("License file does not exist");
             return Response.status(Response.Status.NOT_FOUND).build();
@@ -0,0 +1,240 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.util;
+
+import org.wso2.internal.apps.license.manager.exception.LicenseManagerRuntimeException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the central directory of a zip file without reading the entries. Only the end of the file and the central
+ * directory are memory mapped, so listing a pack of several gigabytes takes milliseconds. Zip64 is supported.
+ */
+public class CentralDirectoryReader {
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+    private static final int ZIP64_LOCATOR_LENGTH = 20;
+    private static final int CENTRAL_DIRECTORY_HEADER_LENGTH = 46;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+    private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    /**
+     * Hide the public constructor.
+     */
+    private CentralDirectoryReader() {
+
+    }
+
+    /**
+     * Read the entries listed in the central directory of a zip file.
+     *
+     * @param zipFile the zip file
+     * @return entries in the order of the central directory
+     * @throws LicenseManagerRuntimeException if the file cannot be read or is not a valid zip file
+     */
+    public static List<Entry> read(File zipFile) throws LicenseManagerRuntimeException {
+
+        try (FileChannel channel = FileChannel.open(zipFile.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long tailSize = Math.min(fileSize,
+                    END_OF_CENTRAL_DIRECTORY_LENGTH + MAX_COMMENT_LENGTH + ZIP64_LOCATOR_LENGTH);
+            MappedByteBuffer tail = map(channel, fileSize - tailSize, tailSize);
+
+            int endPosition = findEndOfCentralDirectory(tail);
+            if (endPosition < 0) {
+                throw new LicenseManagerRuntimeException("End of central directory is not found in " +
+                        zipFile.getName());
+            }
+            long entryCount = tail.getShort(endPosition + 10) & 0xFFFF;
+            long directorySize = tail.getInt(endPosition + 12) & ZIP64_MAGIC;
+            long directoryOffset = tail.getInt(endPosition + 16) & ZIP64_MAGIC;
+
+            // Zip64 archives keep the real values in the zip64 end of central directory record.
+            int locatorPosition = endPosition - ZIP64_LOCATOR_LENGTH;
+            if (locatorPosition >= 0 && tail.getInt(locatorPosition) == ZIP64_LOCATOR_SIGNATURE) {
+                long zip64EndOffset = tail.getLong(locatorPosition + 8);
+                MappedByteBuffer zip64End = map(channel, zip64EndOffset, 56);
+                if (zip64End.getInt(0) != ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                    throw new LicenseManagerRuntimeException("Invalid zip64 end of central directory in " +
+                            zipFile.getName());
+                }
+                entryCount = zip64End.getLong(32);
+                directorySize = zip64End.getLong(40);
+                directoryOffset = zip64End.getLong(48);
+            } else if (entryCount == ZIP64_MAGIC_COUNT || directoryOffset == ZIP64_MAGIC) {
+                throw new LicenseManagerRuntimeException("Zip64 locator is not found in " + zipFile.getName());
+            }
+
+            if (directoryOffset + directorySize > fileSize || directorySize > Integer.MAX_VALUE) {
+                throw new LicenseManagerRuntimeException("Invalid central directory in " + zipFile.getName());
+            }
+            return readEntries(map(channel, directoryOffset, directorySize), entryCount, zipFile.getName());
+        } catch (IOException e) {
+            throw new LicenseManagerRuntimeException("Failed to read the central directory of " +
+                    zipFile.getName(), e);
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static int findEndOfCentralDirectory(MappedByteBuffer tail) {
+
+        for (int position = tail.limit() - END_OF_CENTRAL_DIRECTORY_LENGTH; position >= 0; position--) {
+            if (tail.getInt(position) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private static List<Entry> readEntries(MappedByteBuffer directory, long entryCount, String zipName)
+            throws LicenseManagerRuntimeException {
+
+        List<Entry> entries = new ArrayList<>((int) Math.min(entryCount, 1 << 16));
+        int position = 0;
+
+        for (long i = 0; i < entryCount; i++) {
+            if (position + CENTRAL_DIRECTORY_HEADER_LENGTH > directory.limit() ||
+                    directory.getInt(position) != CENTRAL_DIRECTORY_HEADER_SIGNATURE) {
+                throw new LicenseManagerRuntimeException("Invalid central directory header in " + zipName);
+            }
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+
+            Entry entry = new Entry();
+            entry.method = directory.getShort(position + 10) & 0xFFFF;
+            entry.crc = directory.getInt(position + 16) & ZIP64_MAGIC;
+            entry.compressedSize = directory.getInt(position + 20) & ZIP64_MAGIC;
+            entry.size = directory.getInt(position + 24) & ZIP64_MAGIC;
+            entry.localHeaderOffset = directory.getInt(position + 42) & ZIP64_MAGIC;
+
+            byte[] name = new byte[nameLength];
+            for (int j = 0; j < nameLength; j++) {
+                name[j] = directory.get(position + CENTRAL_DIRECTORY_HEADER_LENGTH + j);
+            }
+            // Same as java.util.zip.ZipFile, so that the names can be used to look up the entries.
+            entry.name = new String(name, StandardCharsets.UTF_8);
+
+            readZip64ExtraField(directory, position + CENTRAL_DIRECTORY_HEADER_LENGTH + nameLength, extraLength,
+                    entry);
+            entries.add(entry);
+            position += CENTRAL_DIRECTORY_HEADER_LENGTH + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    /**
+     * The zip64 extra field holds, in order, only the values which are set to 0xFFFFFFFF in the header.
+     */
+    private static void readZip64ExtraField(MappedByteBuffer directory, int start, int length, Entry entry) {
+
+        int position = start;
+        while (position + 4 <= start + length) {
+            int id = directory.getShort(position) & 0xFFFF;
+            int size = directory.getShort(position + 2) & 0xFFFF;
+            if (id == ZIP64_EXTRA_FIELD_ID) {
+                int valuePosition = position + 4;
+                int end = valuePosition + size;
+                if (entry.size == ZIP64_MAGIC && valuePosition + 8 <= end) {
+                    entry.size = directory.getLong(valuePosition);
+                    valuePosition += 8;
+                }
+                if (entry.compressedSize == ZIP64_MAGIC && valuePosition + 8 <= end) {
+                    entry.compressedSize = directory.getLong(valuePosition);
+                    valuePosition += 8;
+                }
+                if (entry.localHeaderOffset == ZIP64_MAGIC && valuePosition + 8 <= end) {
+                    entry.localHeaderOffset = directory.getLong(valuePosition);
+                }
+                return;
+            }
+            position += 4 + size;
+        }
+    }
+
+    /**
+     * An entry listed in the central directory.
+     */
+    public static class Entry {
+
+        private String name;
+        private long size;
+        private long compressedSize;
+        private long crc;
+        private int method;
+        private long localHeaderOffset;
+
+        public String getName() {
+
+            return name;
+        }
+
+        public long getSize() {
+
+            return size;
+        }
+
+        public long getCompressedSize() {
+
+            return compressedSize;
+        }
+
+        public long getCrc() {
+
+            return crc;
+        }
+
+        public int getMethod() {
+
+            return method;
+        }
+
+        public long getLocalHeaderOffset() {
+
+            return localHeaderOffset;
+        }
+
+        public boolean isDirectory() {
+
+            return name.endsWith("/");
+        }
+    }
+}
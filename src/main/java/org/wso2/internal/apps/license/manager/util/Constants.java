@@ -67,6 +67,81 @@ public class Constants {
     public static final String FTP_USERNAME = "LICENSE_MANAGER_FTP_USERNAME";
     public static final String FTP_PASSWORD = "LICENSE_MANAGER_FTP_PASSWORD";
     public static final String FTP_FILE_LOCATION = "LICENSE_MANAGER_FTP_FILE_LOCATION";
+    public static final String FTP_DOWNLOAD_MODE = "LICENSE_MANAGER_FTP_DOWNLOAD_MODE";
+    public static final String FTP_DOWNLOAD_MODE_SINGLE = "single";
+    public static final String FTP_DOWNLOAD_MODE_CHUNKED = "chunked";
+    public static final String FTP_DOWNLOAD_CHUNK_SIZE = "LICENSE_MANAGER_FTP_DOWNLOAD_CHUNK_SIZE";
+    public static final long DEFAULT_FTP_DOWNLOAD_CHUNK_SIZE = 32 * 1024 * 1024;
+    public static final String FTP_DOWNLOAD_CHANNELS = "LICENSE_MANAGER_FTP_DOWNLOAD_CHANNELS";
+    public static final int DEFAULT_FTP_DOWNLOAD_CHANNELS = 4;
+    public static final String FTP_MAX_SESSIONS = "LICENSE_MANAGER_FTP_MAX_SESSIONS";
+    public static final int DEFAULT_FTP_MAX_SESSIONS = 2;
+    public static final String FTP_MAX_CHANNELS_PER_SESSION = "LICENSE_MANAGER_FTP_MAX_CHANNELS_PER_SESSION";
+    public static final int DEFAULT_FTP_MAX_CHANNELS_PER_SESSION = 4;
+    public static final String FTP_IDLE_TIMEOUT_SECONDS = "LICENSE_MANAGER_FTP_IDLE_TIMEOUT_SECONDS";
+    public static final long DEFAULT_FTP_IDLE_TIMEOUT_SECONDS = 300;
+    public static final String FTP_HEALTH_CHECK_SECONDS = "LICENSE_MANAGER_FTP_HEALTH_CHECK_SECONDS";
+    public static final long DEFAULT_FTP_HEALTH_CHECK_SECONDS = 30;
+    public static final String FTP_KEEPALIVE_SECONDS = "LICENSE_MANAGER_FTP_KEEPALIVE_SECONDS";
+    public static final long DEFAULT_FTP_KEEPALIVE_SECONDS = 30;
+    public static final String FTP_LEASE_TIMEOUT_SECONDS = "LICENSE_MANAGER_FTP_LEASE_TIMEOUT_SECONDS";
+    public static final long DEFAULT_FTP_LEASE_TIMEOUT_SECONDS = 600;
+    public static final String PACK_LISTING_POLL_SECONDS = "LICENSE_MANAGER_PACK_LISTING_POLL_SECONDS";
+    public static final long DEFAULT_PACK_LISTING_POLL_SECONDS = 30;
+    public static final String PACK_SOURCE = "LICENSE_MANAGER_PACK_SOURCE";
+    public static final String PACK_SOURCE_SFTP = "sftp";
+    public static final String PACK_SOURCE_LOCAL = "local";
+    public static final String PACK_SOURCE_MEMORY = "memory";
+    public static final String PACK_SOURCE_DIRECTORY = "LICENSE_MANAGER_PACK_SOURCE_DIRECTORY";
+
+    // Environment variables for scanning the packs.
+    public static final String SCAN_SPILL_THRESHOLD = "LICENSE_MANAGER_SCAN_SPILL_THRESHOLD";
+    public static final long DEFAULT_SCAN_SPILL_THRESHOLD = 16 * 1024 * 1024;
+    public static final String SCAN_MEMORY_LIMIT = "LICENSE_MANAGER_SCAN_MEMORY_LIMIT";
+    public static final long DEFAULT_SCAN_MEMORY_LIMIT = 256 * 1024 * 1024;
+    public static final String SPILL_DIRECTORY_PREFIX = "scan-";
+    public static final String SCAN_PARALLELISM = "LICENSE_MANAGER_SCAN_PARALLELISM";
+    public static final String UNZIP_THREADS = "LICENSE_MANAGER_UNZIP_THREADS";
+    public static final String SCAN_MODE = "LICENSE_MANAGER_SCAN_MODE";
+    public static final String SCAN_MODE_ARCHIVE = "archive";
+    public static final String SCAN_MODE_EXTRACT = "extract";
+    public static final String SCAN_MODE_PIPELINE = "pipeline";
+    public static final String SCAN_PIPELINE_MAX_PENDING_JARS = "LICENSE_MANAGER_SCAN_PIPELINE_MAX_PENDING_JARS";
+    public static final String SCAN_PIPELINE_QUEUE_CHUNKS = "LICENSE_MANAGER_SCAN_PIPELINE_QUEUE_CHUNKS";
+    public static final int DEFAULT_SCAN_PIPELINE_QUEUE_CHUNKS = 64;
+    public static final String LIBRARY_CACHE_PATH = "LICENSE_MANAGER_LIBRARY_CACHE_PATH";
+    public static final String LIBRARY_CACHE_FILE_NAME = "library-metadata.cache";
+    public static final String LIBRARY_CACHE_MAX_ENTRIES = "LICENSE_MANAGER_LIBRARY_CACHE_MAX_ENTRIES";
+    public static final int DEFAULT_LIBRARY_CACHE_MAX_ENTRIES = 100000;
+    public static final String FAULTY_NAMED_DUPLICATE_KEY = "LICENSE_MANAGER_FAULTY_NAMED_DUPLICATE_KEY";
+    public static final String SCAN_MAX_DEPTH = "LICENSE_MANAGER_SCAN_MAX_DEPTH";
+    public static final int DEFAULT_SCAN_MAX_DEPTH = 8;
+    public static final String SCAN_MAX_BYTES = "LICENSE_MANAGER_SCAN_MAX_BYTES";
+    public static final long DEFAULT_SCAN_MAX_BYTES = 16L * 1024 * 1024 * 1024;
+    public static final String SCAN_MAX_ENTRIES = "LICENSE_MANAGER_SCAN_MAX_ENTRIES";
+    public static final long DEFAULT_SCAN_MAX_ENTRIES = 2000000;
+    public static final String SCAN_MAX_SECONDS = "LICENSE_MANAGER_SCAN_MAX_SECONDS";
+    public static final long DEFAULT_SCAN_MAX_SECONDS = 3600;
+    public static final String PACK_STORE_PATH = "LICENSE_MANAGER_PACK_STORE_PATH";
+    public static final String PACK_STORE_DIRECTORY_NAME = "pack-details";
+    public static final String PACK_CACHE_PATH = "LICENSE_MANAGER_PACK_CACHE_PATH";
+    public static final String PACK_CACHE_DIRECTORY_NAME = "pack-cache";
+    public static final String PACK_CACHE_MAX_BYTES = "LICENSE_MANAGER_PACK_CACHE_MAX_BYTES";
+    public static final long DEFAULT_PACK_CACHE_MAX_BYTES = 20L * 1024 * 1024 * 1024;
+    public static final String PRESCAN_ENABLED = "LICENSE_MANAGER_PRESCAN_ENABLED";
+    public static final String PRESCAN_MAX_CONCURRENT = "LICENSE_MANAGER_PRESCAN_MAX_CONCURRENT";
+    public static final int DEFAULT_PRESCAN_MAX_CONCURRENT = 1;
+    public static final String PRESCAN_POLL_SECONDS = "LICENSE_MANAGER_PRESCAN_POLL_SECONDS";
+    public static final long DEFAULT_PRESCAN_POLL_SECONDS = 30;
+    public static final String PRESCAN_MAX_PARKED = "LICENSE_MANAGER_PRESCAN_MAX_PARKED";
+    public static final int DEFAULT_PRESCAN_MAX_PARKED = 8;
+    public static final String PRESCAN_MAX_YIELD_SECONDS = "LICENSE_MANAGER_PRESCAN_MAX_YIELD_SECONDS";
+    public static final long DEFAULT_PRESCAN_MAX_YIELD_SECONDS = 600;
+    public static final String STORAGE_QUOTA_BYTES = "LICENSE_MANAGER_STORAGE_QUOTA_BYTES";
+    public static final long DEFAULT_STORAGE_QUOTA_BYTES = 10L * 1024 * 1024 * 1024;
+    public static final String STORAGE_SWEEP_SECONDS = "LICENSE_MANAGER_STORAGE_SWEEP_SECONDS";
+    public static final long DEFAULT_STORAGE_SWEEP_SECONDS = 300;
+
     // Environment variables for sending emails.
     public static final String EMAIL_USERNAME = "LICENSE_MANAGER_EMAIL_USERNAME";
     public static final String EMAIL_PASSWORD = "LICENSE_MANAGER_EMAIL_PASSWORD";
@@ -0,0 +1,85 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.util;
+
+import org.wso2.internal.apps.license.manager.model.LibraryDetails;
+
+/**
+ * Keys by which duplicate libraries are identified.
+ */
+public enum DuplicateKey {
+
+    /**
+     * Libraries with the same name are duplicates.
+     */
+    NAME,
+
+    /**
+     * Libraries with the same name and version are duplicates.
+     */
+    NAME_VERSION,
+
+    /**
+     * Libraries with the same content are duplicates. Libraries without a checksum fall back to the name and
+     * version.
+     */
+    CONTENT_HASH;
+
+    /**
+     * Get the key of a library.
+     *
+     * @param library library to be identified
+     * @return key of the library
+     */
+    public String of(LibraryDetails library) {
+
+        switch (this) {
+            case NAME:
+                return library.getName();
+            case CONTENT_HASH:
+                if (library.getChecksum() != null) {
+                    return library.getChecksum();
+                }
+                return library.getName() + ":" + library.getVersion();
+            default:
+                return library.getName() + ":" + library.getVersion();
+        }
+    }
+
+    /**
+     * Parse a key from its configured value, such as "name", "name_version" or "content_hash".
+     *
+     * @param value        configured value
+     * @param defaultValue key to use if the value is missing or unknown
+     * @return the key
+     */
+    public static DuplicateKey fromValue(String value, DuplicateKey defaultValue) {
+
+        if (value != null) {
+            for (DuplicateKey key : values()) {
+                if (key.name().equalsIgnoreCase(value.trim().replace('-', '_'))) {
+                    return key;
+                }
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Builds the response which sends a file to a client. The file is streamed with FileChannel.transferTo instead of
+ * being read into the response, is compressed with gzip when the client accepts it, and supports a single byte range
+ * as well as conditional requests on the entity tag and the modification time. The file is pinned with the storage
+ * janitor while it is sent.
+ */
+public class FileStreamingResponse {
+
+    private static final Logger log = LoggerFactory.getLogger(FileStreamingResponse.class);
+    private static final String ACCEPT_RANGES = "Accept-Ranges";
+    private static final String CONTENT_RANGE = "Content-Range";
+    private static final String BYTES_UNIT = "bytes";
+    private static final String GZIP = "gzip";
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+    private static final long SERVED_RANGES_IDLE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final Map<String, ServedRanges> servedRanges = new ConcurrentHashMap<>();
+
+    private FileStreamingResponse() {
+
+    }
+
+    /**
+     * Create the response for a request of a file.
+     *
+     * @param file            file to send
+     * @param range           value of the Range header, may be null
+     * @param ifRange         value of the If-Range header, may be null
+     * @param ifNoneMatch     value of the If-None-Match header, may be null
+     * @param ifModifiedSince value of the If-Modified-Since header, may be null
+     * @param acceptEncoding  value of the Accept-Encoding header, may be null
+     * @param onComplete      run once the whole file has been sent to the client, either in a single response or in
+     *                        ranges which together cover the file
+     * @return builder of the response
+     */
+    public static Response.ResponseBuilder create(File file, String range, String ifRange, String ifNoneMatch,
+                                                  String ifModifiedSince, String acceptEncoding, Runnable onComplete) {
+
+        long size = file.length();
+        long lastModified = file.lastModified();
+        String eTag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+        String gzipETag = eTag.substring(0, eTag.length() - 1) + "-" + GZIP + "\"";
+        String lastModifiedDate = DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                ZonedDateTime.ofInstant(Instant.ofEpochMilli(lastModified), ZoneOffset.UTC));
+
+        if (ifNoneMatch != null ? matches(ifNoneMatch, eTag, gzipETag) :
+                isNotModifiedSince(ifModifiedSince, lastModified)) {
+            return Response.notModified().header(HttpHeaders.ETAG, eTag)
+                    .header(HttpHeaders.LAST_MODIFIED, lastModifiedDate);
+        }
+
+        // A range is only served if the client still has the same content, otherwise the whole file is sent.
+        long[] bounds = null;
+        if (range != null && (ifRange == null || ifRange.trim().equals(eTag) ||
+                ifRange.trim().equals(lastModifiedDate))) {
+            bounds = parseRange(range, size);
+            if (bounds != null && bounds.length == 0) {
+                return Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(CONTENT_RANGE, BYTES_UNIT + " */" + size)
+                        .header(ACCEPT_RANGES, BYTES_UNIT);
+            }
+        }
+
+        Response.ResponseBuilder builder;
+        if (bounds != null) {
+            long start = bounds[0];
+            long count = bounds[1] - bounds[0] + 1;
+            Runnable onRangeSent = () -> {
+                if (recordRange(file, eTag, size, start, start + count)) {
+                    complete(file, onComplete);
+                }
+            };
+            builder = Response.status(Response.Status.PARTIAL_CONTENT)
+                    .entity(stream(file, start, count, false, onRangeSent))
+                    .header(CONTENT_RANGE, BYTES_UNIT + " " + bounds[0] + "-" + bounds[1] + "/" + size)
+                    .header(HttpHeaders.CONTENT_LENGTH, count)
+                    .header(HttpHeaders.ETAG, eTag);
+        } else if (acceptsGzip(acceptEncoding)) {
+            builder = Response.ok(stream(file, 0, size, true, () -> complete(file, onComplete)))
+                    .header(HttpHeaders.CONTENT_ENCODING, GZIP)
+                    .header(HttpHeaders.ETAG, gzipETag);
+        } else {
+            builder = Response.ok(stream(file, 0, size, false, () -> complete(file, onComplete)))
+                    .header(HttpHeaders.CONTENT_LENGTH, size)
+                    .header(HttpHeaders.ETAG, eTag);
+        }
+        return builder.type(MediaType.TEXT_PLAIN)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + file.getName() + "\"")
+                .header(HttpHeaders.LAST_MODIFIED, lastModifiedDate)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .header(ACCEPT_RANGES, BYTES_UNIT);
+    }
+
+    /**
+     * @param onSent run after the bytes are sent to the client
+     */
+    private static StreamingOutput stream(File file, long start, long count, boolean gzip, Runnable onSent) {
+
+        return outputStream -> {
+            // Pinned only while the entity is written, so a response which is never written leaves no pin behind.
+            StorageJanitor storageJanitor = StorageJanitor.getStorageJanitor();
+            storageJanitor.pin(file);
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                if (gzip) {
+                    GZIPOutputStream gzipStream = new GZIPOutputStream(outputStream, GZIP_BUFFER_SIZE);
+                    transfer(channel, start, count, gzipStream);
+                    gzipStream.finish();
+                } else {
+                    transfer(channel, start, count, outputStream);
+                }
+                outputStream.flush();
+            } finally {
+                storageJanitor.unpin(file);
+            }
+            onSent.run();
+        };
+    }
+
+    /**
+     * Record a range of a version of a file which has been sent. The ranges of earlier versions of the file are
+     * forgotten, as are the ranges of any file which have not been added to for a while, so ranges of transfers which
+     * are never completed are not kept for good.
+     *
+     * @return true if the ranges sent so far cover the whole file
+     */
+    private static boolean recordRange(File file, String eTag, long size, long start, long end) {
+
+        long now = System.currentTimeMillis();
+        String prefix = file.getAbsolutePath() + '\0';
+        String rangesKey = prefix + eTag;
+        servedRanges.entrySet().removeIf(entry -> entry.getValue().isIdle(now) ||
+                (entry.getKey().startsWith(prefix) && !entry.getKey().equals(rangesKey)));
+        boolean[] covered = new boolean[1];
+        servedRanges.compute(rangesKey, (key, ranges) -> {
+            ranges = (ranges == null) ? new ServedRanges(size) : ranges;
+            covered[0] = ranges.add(start, end, now);
+            return ranges;
+        });
+        return covered[0];
+    }
+
+    /**
+     * Forget the ranges served of any version of the file and run the callback of the completed transfer.
+     */
+    private static void complete(File file, Runnable onComplete) {
+
+        String prefix = file.getAbsolutePath() + '\0';
+        servedRanges.keySet().removeIf(key -> key.startsWith(prefix));
+        if (onComplete != null) {
+            onComplete.run();
+        }
+    }
+
+    private static void transfer(FileChannel channel, long position, long count, OutputStream outputStream)
+            throws IOException {
+
+        // Do not close the target channel, it would close the output stream of the response.
+        WritableByteChannel target = Channels.newChannel(outputStream);
+        long end = position + count;
+        while (position < end) {
+            long transferred = channel.transferTo(position, end - position, target);
+            if (transferred <= 0 && position >= channel.size()) {
+                throw new IOException("The file was truncated while it was sent");
+            }
+            position += transferred;
+        }
+    }
+
+    /**
+     * Parse a single byte range.
+     *
+     * @return first and last byte of the range, an empty array if the range cannot be satisfied, or null if the
+     * header is not a single byte range and the whole file is to be sent
+     */
+    private static long[] parseRange(String range, long size) {
+
+        String value = range.trim();
+        if (!value.startsWith(BYTES_UNIT + "=") || value.indexOf(',') >= 0) {
+            return null;
+        }
+        value = value.substring(BYTES_UNIT.length() + 1).trim();
+        int dash = value.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                // The last bytes of the file.
+                long suffix = Long.parseLong(value.substring(1).trim());
+                if (suffix <= 0 || size == 0) {
+                    return new long[0];
+                }
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(value.substring(0, dash).trim());
+                String last = value.substring(dash + 1).trim();
+                end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                if (start < 0 || end < start) {
+                    return null;
+                }
+                end = Math.min(end, size - 1);
+            }
+            if (start >= size) {
+                return new long[0];
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring the malformed range " + range);
+            return null;
+        }
+    }
+
+    private static boolean matches(String ifNoneMatch, String eTag, String gzipETag) {
+
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(eTag) || tag.equals(gzipETag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isNotModifiedSince(String ifModifiedSince, long lastModified) {
+
+        if (ifModifiedSince == null) {
+            return false;
+        }
+        try {
+            long since = ZonedDateTime.parse(ifModifiedSince.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                    .toInstant().toEpochMilli();
+            // HTTP dates have a resolution of a second.
+            return lastModified / 1000 <= since / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The ranges of a version of a file which have been sent, merged into disjoint intervals.
+     */
+    private static class ServedRanges {
+
+        private final long size;
+        private final TreeMap<Long, Long> intervals = new TreeMap<>();
+        private long lastSentMillis;
+
+        ServedRanges(long size) {
+
+            this.size = size;
+        }
+
+        /**
+         * Record a range which has been sent.
+         *
+         * @param start      first byte of the range
+         * @param end        byte after the last byte of the range
+         * @param sentMillis time the range was sent
+         * @return true if the ranges sent so far cover the whole file
+         */
+        synchronized boolean add(long start, long end, long sentMillis) {
+
+            lastSentMillis = sentMillis;
+            Map.Entry<Long, Long> before = intervals.floorEntry(start);
+            if (before != null && before.getValue() >= start) {
+                start = before.getKey();
+                end = Math.max(end, before.getValue());
+            }
+            Map.Entry<Long, Long> after = intervals.ceilingEntry(start);
+            while (after != null && after.getKey() <= end) {
+                end = Math.max(end, after.getValue());
+                intervals.remove(after.getKey());
+                after = intervals.ceilingEntry(start);
+            }
+            intervals.put(start, end);
+            return intervals.size() == 1 && intervals.firstKey() == 0 && intervals.firstEntry().getValue() >= size;
+        }
+
+        synchronized boolean isIdle(long now) {
+
+            return now - lastSentMillis > SERVED_RANGES_IDLE_MILLIS;
+        }
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim();
+            if (!name.equalsIgnoreCase(GZIP) && !name.equals("*")) {
+                continue;
+            }
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(parameter.substring(2).trim()) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
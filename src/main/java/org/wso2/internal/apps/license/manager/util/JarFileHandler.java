@@ -21,23 +21,41 @@
 package org.wso2.internal.apps.license.manager.util;
 
 import org.apache.commons.lang.StringUtils;
-import org.op4j.Op;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wso2.internal.apps.license.manager.exception.LicenseManagerRuntimeException;
+import org.wso2.internal.apps.license.manager.exception.ScanBudgetExceededException;
 import org.wso2.internal.apps.license.manager.model.LibraryDetails;
 import org.wso2.internal.apps.license.manager.model.PackDetails;
+import org.wso2.internal.apps.license.manager.model.PipelineStatistics;
+import org.wso2.msf4j.util.SystemVariableUtil;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Stack;
-import java.util.UUID;
-import java.util.jar.Attributes;
-import java.util.jar.Manifest;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 /**
@@ -46,6 +64,40 @@ import java.util.zip.ZipInputStream;
 public class JarFileHandler {
 
     private static final Logger log = LoggerFactory.getLogger(JarFileHandler.class);
+    private final long spillThreshold = Long.parseLong(SystemVariableUtil.getValue(Constants.SCAN_SPILL_THRESHOLD,
+            String.valueOf(Constants.DEFAULT_SCAN_SPILL_THRESHOLD)));
+    private final LibraryMetadataCache libraryMetadataCache = LibraryMetadataCache.getLibraryMetadataCache();
+    private final int scanParallelism = Integer.parseInt(SystemVariableUtil.getValue(Constants.SCAN_PARALLELISM,
+            String.valueOf(Runtime.getRuntime().availableProcessors())));
+    private final int maxPendingJars = Integer.parseInt(SystemVariableUtil.getValue(
+            Constants.SCAN_PIPELINE_MAX_PENDING_JARS, String.valueOf(4 * scanParallelism)));
+    private final ScanBudget scanBudget;
+    private Consumer<LibraryDetails> libraryListener = library -> {
+    };
+
+    public JarFileHandler() {
+
+        this(ScanBudget.unlimited());
+    }
+
+    /**
+     * @param scanBudget resource budget of the task which scans the pack
+     */
+    public JarFileHandler(ScanBudget scanBudget) {
+
+        this.scanBudget = scanBudget;
+    }
+
+    /**
+     * Set the listener which receives each library as soon as it is identified, while the scan is still running.
+     * The listener is called from the scanning threads.
+     *
+     * @param libraryListener listener of the libraries found
+     */
+    public void setLibraryListener(Consumer<LibraryDetails> libraryListener) {
+
+        this.libraryListener = libraryListener;
+    }
 
     /**
      * Recursively check all the jars in the product.
@@ -55,86 +107,259 @@ public class JarFileHandler {
      */
     public PackDetails extractJarsRecursively(String file) throws LicenseManagerRuntimeException {
 
+        return extractJarsRecursively(file, null);
+    }
+
+    /**
+     * Recursively check all the jars in the product. The cache keys of the jars are taken from the central directory
+     * of the zip file the pack was unzipped from, so that a jar is not read only to compute its checksum.
+     *
+     * @param file    path to the pack.
+     * @param zipFile path to the zip file the pack was unzipped from, or null if it is not available.
+     * @throws LicenseManagerRuntimeException If file unzipping or extraction fails.
+     */
+    public PackDetails extractJarsRecursively(String file, String zipFile) throws LicenseManagerRuntimeException {
+
         //check for the file
         if (StringUtils.isEmpty(file) || !new File(file).exists() || !new File(file).isDirectory()) {
             throw new LicenseManagerRuntimeException("Folder is not found in the location");
         }
 
-        //create a folder to extract content
-        PackDetails packDetails = new PackDetails();
-        String targetFolder = new File(file).getName();
-        String uuid = UUID.randomUUID().toString();
-        String tempFolderToHoldJars = new File(file).getParent() + File.separator + uuid;
+        File packFolder = new File(file);
+        Path packRoot = packFolder.getAbsoluteFile().toPath();
+        Map<String, ZipEntry> zipEntries = readJarEntries(zipFile);
 
-        //Get all the JARs inside the zip
-        List<LibraryDetails> jarFilesInPack = findDirectJars(file);
+        //Scan the JARs of the pack while the folder is walked
+        return createPackDetails(packFolder.getName(), consumer -> findDirectJars(packRoot, zipEntries, consumer),
+                packFolder.getAbsoluteFile().getParentFile());
+    }
 
-        //Get all the JARs with faulty name from All the JARs found
-        List<LibraryDetails> faultyNamedJars = findAllJars(tempFolderToHoldJars, jarFilesInPack);
+    /**
+     * @param zipFile path to the zip file of the pack, may be null
+     * @return central directory entries of the jars in the pack mapped by their names, empty if the zip file is not
+     * available
+     */
+    private static Map<String, ZipEntry> readJarEntries(String zipFile) {
 
-        packDetails.setPackName(getName(targetFolder));
-        packDetails.setPackVersion(getVersion(targetFolder));
-        packDetails.setLibFilesInPack(jarFilesInPack);
-        packDetails.setFaultyNamedLibs(faultyNamedJars);
-        return packDetails;
+        Map<String, ZipEntry> zipEntries = new HashMap<>();
+        if (StringUtils.isEmpty(zipFile) || !new File(zipFile).isFile()) {
+            return zipEntries;
+        }
+        try (ZipFile pack = new ZipFile(zipFile)) {
+            Enumeration<? extends ZipEntry> entries = pack.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && accept(entry.getName())) {
+                    zipEntries.put(entry.getName(), entry);
+                }
+            }
+        } catch (IOException e) {
+            // The checksums are computed from the jars instead.
+            log.warn("Failed to read the central directory of " + zipFile + ". " + e.getMessage());
+            zipEntries.clear();
+        }
+        return zipEntries;
     }
 
     /**
-     * Obtain the direct jars contained in the pack.
+     * Recursively check all the jars in the product without unzipping the pack. The jars are listed from the
+     * central directory of the pack and read straight from it, so nothing else in the pack touches the disk.
      *
-     * @param path path to the pack file
+     * @param zipFile        path to the zip file of the pack.
+     * @param spillDirectory directory to hold inner jars which are too large to be kept in memory, apart from the
+     *                       pack
+     * @throws LicenseManagerRuntimeException If reading the pack fails.
      */
-    private List<LibraryDetails> findDirectJars(String path) {
+    public PackDetails extractJarsFromArchive(String zipFile, File spillDirectory)
+            throws LicenseManagerRuntimeException {
 
-        List<File> directZips = find(path);
-        List<LibraryDetails> listOfDirectJarsInPack = new ArrayList<>();
+        //check for the file
+        if (StringUtils.isEmpty(zipFile) || !new File(zipFile).isFile()) {
+            throw new LicenseManagerRuntimeException("Pack is not found in the location");
+        }
+
+        File packFile = new File(zipFile);
+        String packName = packFile.getName();
+        if (packName.endsWith(".zip")) {
+            packName = packName.substring(0, packName.length() - ".zip".length());
+        }
 
-        for (File directZip : directZips) {
-            LibraryDetails currentJarFile = createJarObjectFromFile(directZip, null);
-            listOfDirectJarsInPack.add(currentJarFile);
+        try (ZipFile pack = new ZipFile(packFile)) {
+            //Scan the JARs of the pack while the central directory is listed
+            return createPackDetails(packName, consumer -> {
+                scanBudget.addEntries(pack.size());
+                Enumeration<? extends ZipEntry> entries = pack.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (!entry.isDirectory() && accept(entry.getName())) {
+                        String fileName = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+                        LibraryDetails currentJarFile = createJarObject(fileName, entry.getName(), null);
+                        consumer.accept(new PendingArchive(currentJarFile, pack, entry));
+                    }
+                }
+            }, spillDirectory);
+        } catch (IOException e) {
+            throw new LicenseManagerRuntimeException("Failed to read the pack. ", e);
         }
-        return listOfDirectJarsInPack;
     }
 
     /**
-     * @param file Jar File
-     * @return boolean is file JAR / MAR
+     * Recursively check all the jars in the product while the pack is still being downloaded. The pack is read
+     * once, in order, from the stream and each direct jar is scanned as soon as its entry has been read. The number
+     * of direct jars read but not yet scanned is bounded, so that the stream is not read far ahead of the scan.
+     *
+     * @param packName       name of the pack
+     * @param packStream     stream of the zip file of the pack, which is not closed
+     * @param spillDirectory directory to hold jars which are too large to be kept in memory
+     * @param statistics     statistics of the pipeline
+     * @throws LicenseManagerRuntimeException If reading the pack fails. The cause is a {@link ZipException} if the
+     *                                        pack cannot be read as a stream.
      */
-    private static boolean accept(File file) {
-        //is a file a JAR or MAR ?
-        return file.getName().endsWith(".jar") || file.getName().endsWith(".mar");
+    public PackDetails extractJarsFromStream(String packName, InputStream packStream, File spillDirectory,
+                                             PipelineStatistics statistics) throws LicenseManagerRuntimeException {
+
+        if (packName.endsWith(".zip")) {
+            packName = packName.substring(0, packName.length() - ".zip".length());
+        }
+        Semaphore pendingJars = new Semaphore(maxPendingJars);
+        ZipInputStream pack = new ZipInputStream(packStream);
+        InputStream trackedPack = scanBudget.track(pack);
+
+        //Scan the JARs of the pack while the pack is downloaded
+        return createPackDetails(packName, consumer -> {
+            try {
+                for (ZipEntry entry = pack.getNextEntry(); entry != null; entry = pack.getNextEntry()) {
+                    scanBudget.addEntries(1);
+                    if (!entry.isDirectory() && accept(entry.getName())) {
+                        String fileName = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+                        LibraryDetails currentJarFile = createJarObject(fileName, entry.getName(), null);
+                        pendingJars.acquire();
+                        SpillBuffer content;
+                        try {
+                            content = SpillBuffer.read(trackedPack, spillDirectory, spillThreshold);
+                        } catch (IOException e) {
+                            pendingJars.release();
+                            throw e;
+                        }
+                        statistics.getScanQueueDepth().incrementAndGet();
+                        consumer.accept(new PendingArchive(currentJarFile, content, () -> {
+                            statistics.getScanQueueDepth().decrementAndGet();
+                            statistics.getScannedJars().incrementAndGet();
+                            pendingJars.release();
+                        }));
+                    }
+                }
+            } catch (IOException e) {
+                if (e.getCause() instanceof ScanBudgetExceededException) {
+                    throw (ScanBudgetExceededException) e.getCause();
+                }
+                throw new LicenseManagerRuntimeException("Failed to read the pack. ", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new LicenseManagerRuntimeException("Reading the pack was interrupted. ", e);
+            }
+        }, spillDirectory);
     }
 
     /**
-     * @param path Folder Path
-     * @return List of jars found
+     * Scan the direct jars of a pack and create the pack details.
+     *
+     * @param targetFolder   name of the pack
+     * @param directJars     source of the jars found in the pack
+     * @param spillDirectory directory to hold jars which are too large to be kept in memory
+     * @return details of the pack
+     * @throws LicenseManagerRuntimeException if reading the jars fails.
      */
-    private List<File> find(String path) {
+    private PackDetails createPackDetails(String targetFolder, DirectJarSource directJars, File spillDirectory)
+            throws LicenseManagerRuntimeException {
 
-        List<File> files = new ArrayList<>();
-        Stack<File> directories = new Stack<>();
-        directories.add(new File(path));
-        while (!directories.empty()) {
-            File next = directories.pop();
-            directories.addAll(Op.onArray(next.listFiles(File::isDirectory)).toList().get());
+        PackDetails packDetails = new PackDetails();
+
+        //Get all the JARs with faulty name from All the JARs found
+        List<LibraryDetails> jarFilesInPack = new ArrayList<>();
+        List<LibraryDetails> faultyNamedJars = findAllJars(directJars, jarFilesInPack, spillDirectory);
 
-            files.addAll(Op.onArray(next.listFiles(JarFileHandler::accept)).toList().get());
+        packDetails.setPackName(getName(targetFolder));
+        packDetails.setPackVersion(getVersion(targetFolder));
+        packDetails.setLibFilesInPack(jarFilesInPack);
+        packDetails.setFaultyNamedLibs(faultyNamedJars);
+        packDetails.setUniqueFaultyNamedLibs(removeDuplicates(faultyNamedJars));
+        return packDetails;
+    }
+
+    /**
+     * Walk the extracted pack and hand each jar to the consumer as soon as it is found. Each directory is listed
+     * once and the attributes of each file come with the walk, so no file is looked up twice.
+     *
+     * @param packRoot   the extracted pack
+     * @param zipEntries central directory entries of the jars in the zip file of the pack, mapped by their names
+     * @param consumer   consumer of the jars found
+     * @throws LicenseManagerRuntimeException if walking the pack fails.
+     */
+    private void findDirectJars(Path packRoot, Map<String, ZipEntry> zipEntries, Consumer<PendingArchive> consumer)
+            throws LicenseManagerRuntimeException {
+
+        try {
+            Files.walkFileTree(packRoot, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                    new SimpleFileVisitor<Path>() {
+
+                        @Override
+                        public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+
+                            String fileName = file.getFileName().toString();
+                            if (attributes.isRegularFile() && accept(fileName)) {
+                                // Relative to the extracted folder, which matches the entry names within the zip
+                                // file of the pack.
+                                String archivePath = packRoot.relativize(file).toString()
+                                        .replace(File.separatorChar, '/');
+                                LibraryDetails currentJarFile = createJarObject(fileName, archivePath, null);
+                                ZipEntry entry = zipEntries.get(archivePath);
+                                String checksum = (entry == null || entry.getCrc() < 0
+                                        || entry.getSize() != attributes.size()) ? null :
+                                        LibraryMetadataCache.checksum(entry.getCrc(), entry.getSize());
+                                consumer.accept(new PendingArchive(currentJarFile,
+                                        SpillBuffer.ofFile(file.toFile()), checksum));
+                            }
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+
+                            if (e instanceof FileSystemLoopException) {
+                                log.warn("Skipping the symbolic link " + file + " which points to its own parent.");
+                                return FileVisitResult.CONTINUE;
+                            }
+                            throw e;
+                        }
+                    });
+        } catch (IOException e) {
+            throw new LicenseManagerRuntimeException("Failed to walk the pack. ", e);
         }
-        return files;
+    }
+
+    /**
+     * @param fileName name of the file
+     * @return boolean is file JAR / MAR
+     */
+    private static boolean accept(String fileName) {
+        //is a file a JAR or MAR ?
+        return fileName.endsWith(".jar") || fileName.endsWith(".mar");
     }
 
     /**
      * Set the values for the attributes of the Jar object.
      *
-     * @param fileContainingJar jar file to create a JarFile.java object
-     * @param parent            parent jar of the corresponding jar
+     * @param fileName    file name of the jar
+     * @param archivePath path of the jar within the pack, nested jars are separated by "!/"
+     * @param parent      parent jar of the corresponding jar
      * @return JarFile object
      */
-    private LibraryDetails createJarObjectFromFile(File fileContainingJar, LibraryDetails parent) {
+    private LibraryDetails createJarObject(String fileName, String archivePath, LibraryDetails parent) {
 
         LibraryDetails jar = new LibraryDetails();
-        setNameAndVersionOfJar(fileContainingJar, jar);
-        jar.setJarContent(fileContainingJar);
+        setNameAndVersionOfJar(fileName, jar);
+        jar.setArchivePath(archivePath);
         jar.setParent(parent);
         return jar;
     }
@@ -142,226 +367,502 @@ public class JarFileHandler {
     /**
      * Set the values for the attributes of the Jar object.
      *
-     * @param fileContainingJar jar file to create a JarFile.java object
-     * @param jar               JarFile java object
+     * @param fileName file name of the jar
+     * @param jar      JarFile java object
      */
-    private void setNameAndVersionOfJar(File fileContainingJar, LibraryDetails jar) {
+    private void setNameAndVersionOfJar(String fileName, LibraryDetails jar) {
 
-        String jarName = getName(fileContainingJar.getName());
-        String jarVersion = getVersion(fileContainingJar.getName());
+        int extensionIndex = JarFileNameParser.getExtensionIndex(fileName);
+        int splitIndex = JarFileNameParser.getSplitIndex(fileName, extensionIndex);
 
-        if (StringUtils.isEmpty(jarName) || StringUtils.isEmpty(jarVersion)) {
+        // A separator right before the extension leaves the version empty.
+        if (splitIndex <= 0 || splitIndex + 1 >= extensionIndex) {
             jar.setValidName(false);
-            //jar.setProduct(getDefaultName(fileContainingJar.getName()));
-            jar.setName(getDefaultName(fileContainingJar.getName()));
-            jar.setFileName(fileContainingJar.getName());
+            jar.setName(fileName.substring(0, extensionIndex));
+            jar.setFileName(fileName);
             jar.setVersion("1.0.0");
         } else {
             jar.setValidName(true);
-            jar.setName(jarName);
-            jar.setFileName(fileContainingJar.getName());
-            log.info("FILE NAME :" + fileContainingJar.getName());
-            //jar.setProduct(jarName);
-            jar.setVersion(jarVersion);
+            jar.setName(fileName.substring(0, splitIndex));
+            jar.setFileName(fileName);
+            jar.setVersion(fileName.substring(splitIndex + 1, extensionIndex));
         }
 
     }
 
     /**
-     * Extract the name of the jar from the file name.
+     * Extract the name from a file name.
      *
-     * @param name file name of the jar
-     * @return name of the jar
+     * @param name file name
+     * @return name without the version, or null if the file name has no version
      */
     private static String getName(String name) {
 
-        String extractedName = null;
-
-        for (int i = 0; i < name.length(); i++) {
-            if ((name.charAt(i) == '-' || name.charAt(i) == '_') && (Character.isDigit(name.charAt(i + 1)) || name.charAt(i + 1) == 'S' || name.charAt(i + 1) == 'r')) {
-
-                extractedName = name.substring(0, i);
-            }
-        }
-        return extractedName;
+        int splitIndex = JarFileNameParser.getSplitIndex(name);
+        return (splitIndex < 0) ? null : name.substring(0, splitIndex);
     }
 
     /**
-     * Extract the version of the jar from the file name.
+     * Extract the version from a file name.
      *
-     * @param name file name of the jar
-     * @return version of the jar
+     * @param name file name
+     * @return version, or null if the file name has no version
      */
     private static String getVersion(String name) {
 
-        String extractedVersion = null;
+        int extensionIndex = JarFileNameParser.getExtensionIndex(name);
+        int splitIndex = JarFileNameParser.getSplitIndex(name, extensionIndex);
+        return (splitIndex < 0) ? null : name.substring(splitIndex + 1, extensionIndex);
+    }
 
-        name = name.replace(".jar", "");
-        name = name.replace(".mar", "");
+    /**
+     * Find all the jars including inner jars which are inside another jar. Inner jars are read straight from the
+     * stream of their parent jar and are never extracted into the pack. Each jar is scanned as a fork/join task,
+     * submitted as soon as the source finds it, which forks a task for each of its inner jars. The results are
+     * merged in the order of the archive paths of the direct jars followed by the order of the entries in their
+     * parents, so the lists are stable between scans.
+     *
+     * @param directJars     source of the jars found in the pack
+     * @param jarFilesInPack list to collect the jars with proper names
+     * @param spillDirectory directory to hold inner jars which are too large to be kept in memory
+     * @return jars with faulty names
+     * @throws LicenseManagerRuntimeException if reading the jars fails.
+     */
+    private List<LibraryDetails> findAllJars(DirectJarSource directJars, List<LibraryDetails> jarFilesInPack,
+                                             File spillDirectory) throws LicenseManagerRuntimeException {
+
+        AtomicBoolean failed = new AtomicBoolean(false);
+        List<ScanTask> tasks = new ArrayList<>();
+        LicenseManagerRuntimeException failure = null;
+
+        ForkJoinPool pool = new ForkJoinPool(scanParallelism);
+        try {
+            // Each jar starts to be scanned as soon as it is found.
+            try {
+                directJars.forEach(pendingArchive -> {
+                    ScanTask task = new ScanTask(pendingArchive, 1, spillDirectory, failed);
+                    tasks.add(task);
+                    pool.execute(task);
+                });
+            } catch (LicenseManagerRuntimeException e) {
+                failed.set(true);
+                failure = e;
+            }
 
-        for (int i = 0; i < name.length(); i++) {
-            if ((name.charAt(i) == '-' || name.charAt(i) == '_') && (Character.isDigit(name.charAt(i + 1)) || name.charAt(i + 1) == 'S' || name.charAt(i + 1) == 'r')) {
-                extractedVersion = name.substring(i + 1, name.length());
+            // Join every task so that all of them release their content, even if one of them fails.
+            tasks.sort(Comparator.comparing(task -> task.pendingArchive.library.getArchivePath()));
+            ScanResult result = new ScanResult();
+            for (ScanTask task : tasks) {
+                try {
+                    result.append(task.join());
+                } catch (ScanFailure e) {
+                    failure = (failure == null) ? e.getCause() : failure;
+                }
+            }
+            if (failure != null) {
+                // Report the budget breach itself rather than a failure it caused in another task.
+                throw (scanBudget.getBreach() != null) ? scanBudget.getBreach() : failure;
             }
+            jarFilesInPack.addAll(result.jarFilesInPack);
+            return result.faultyNamedJars;
+        } finally {
+            pool.shutdown();
+            libraryMetadataCache.save();
+            log.info("Library metadata cache: " + libraryMetadataCache.getHits() + " hits, " +
+                    libraryMetadataCache.getMisses() + " misses, " + libraryMetadataCache.size() + " libraries.");
         }
-        return extractedVersion;
     }
 
     /**
-     * @param filename d
-     * @return d
+     * Returns the type of the jarFile.
+     *
+     * @param jarFile jarFile for which the type is needed
+     * @return type of the jarFile
      */
-    private String getDefaultName(String filename) {
+    private String getType(LibraryDetails jarFile) {
 
-        if (filename.endsWith(".jar") || filename.endsWith(".mar")) {
-            filename = filename.replace(".jar", "");
-            filename = filename.replace(".mar", "");
-        }
+        if (jarFile.getParent() == null)
+            return (jarFile.isBundle()) ? Constants.JAR_TYPE_BUNDLE : Constants.JAR_TYPE_JAR;
+        else return Constants.JAR_TYPE_JAR_IN_BUNDLE;
 
-        return filename;
     }
 
     /**
-     * Find all the jars including inner jars which are inside another jar.
+     * Remove the duplicates in the faulty named jars, identified by the configured key. The name is used by
+     * default.
      *
-     * @param tempFolderToHoldJars File path to extract the jars.
-     * @throws LicenseManagerRuntimeException if the jar extraction fails.
+     * @param faultyNamedJars list of jars in which the names and version are missing
+     * @return unique list of jars with faulty names.
      */
-    private List<LibraryDetails> findAllJars(String tempFolderToHoldJars, List<LibraryDetails> jarFilesInPack) throws LicenseManagerRuntimeException {
-
-        boolean check = new File(tempFolderToHoldJars).mkdir();
+    public static List<LibraryDetails> removeDuplicates(List<LibraryDetails> faultyNamedJars) {
 
-        Stack<LibraryDetails> zipStack = new Stack<>();
-        List<LibraryDetails> faultyNamedJars = new ArrayList<>();
+        return removeDuplicates(faultyNamedJars, getDuplicateKey());
+    }
 
-        zipStack.addAll(jarFilesInPack);
-        jarFilesInPack.clear();
-        tempFolderToHoldJars = tempFolderToHoldJars + File.separator;
+    /**
+     * Remove the duplicates in the faulty named jars. The first jar of each key is kept, in the original order.
+     *
+     * @param faultyNamedJars list of jars in which the names and version are missing
+     * @param duplicateKey    key by which the duplicates are identified
+     * @return unique list of jars with faulty names.
+     */
+    public static List<LibraryDetails> removeDuplicates(List<LibraryDetails> faultyNamedJars,
+                                                        DuplicateKey duplicateKey) {
 
-        while (!zipStack.empty()) {
-            LibraryDetails jarFile = zipStack.pop();
-            File fileToBeExtracted = jarFile.getJarContent();
-            File extractTo;
+        Map<String, LibraryDetails> faultyNamedUniqueJarFiles = new LinkedHashMap<>();
+        for (LibraryDetails jarFile : faultyNamedJars) {
+            faultyNamedUniqueJarFiles.putIfAbsent(duplicateKey.of(jarFile), jarFile);
+        }
+        return new ArrayList<>(faultyNamedUniqueJarFiles.values());
+    }
 
-            // Get information from the Manifest file.
-            Manifest manifest;
-            try (java.util.jar.JarFile jarFile1 = new java.util.jar.JarFile(fileToBeExtracted)) {
-                manifest = jarFile1.getManifest();
-            } catch (IOException e) {
-                throw new LicenseManagerRuntimeException(e.getMessage());
-            }
-            if (manifest != null) {
-                setNameAndVersionOfJar(jarFile.getJarContent(), jarFile);
-                jarFile.setisBundle(getIsBundle(manifest));
-                jarFile.setType(getType(manifest, jarFile));
-                jarFile.setVendor(setVendor(manifest, jarFile));
-                if (!jarFile.isValidName()) {
-                    faultyNamedJars.add(jarFile);
-                } else {
-                    jarFilesInPack.add(jarFile);
-                }
-            }
+    /**
+     * Get the faulty named jars of a pack without the duplicates. The list is computed once and kept in the pack
+     * details, so that the indexes shown to the user stay the same between requests.
+     *
+     * @param packDetails details of the scanned pack
+     * @return unique list of jars with faulty names.
+     */
+    public static List<LibraryDetails> getUniqueFaultyNamedJars(PackDetails packDetails) {
 
-            // If a jarFile contains jars inside, extract the parent jarFile.
-            if (checkInnerJars(fileToBeExtracted.getAbsolutePath())) {
-                extractTo = new File(tempFolderToHoldJars + fileToBeExtracted.getName());
-                extractTo.mkdir();
-                ZipHandler.unzip(fileToBeExtracted.getAbsolutePath(), extractTo.getAbsolutePath());
-                List<File> listOfInnerFiles =
-                        Op.onArray(extractTo.listFiles(file -> (file.getName().endsWith(".jar") || file.getName().endsWith(".mar")))).toList().get();
-                for (File nextFile : listOfInnerFiles) {
-                    zipStack.add(createJarObjectFromFile(nextFile, jarFile));
-                }
+        synchronized (packDetails) {
+            if (packDetails.getUniqueFaultyNamedLibs() == null) {
+                packDetails.setUniqueFaultyNamedLibs(removeDuplicates(packDetails.getFaultyNamedLibs()));
             }
+            return packDetails.getUniqueFaultyNamedLibs();
         }
-        return faultyNamedJars;
     }
 
     /**
-     * Returns the type of the jarFile by evaluating the Manifest file.
+     * @return key by which the duplicate faulty named jars are identified
+     */
+    public static DuplicateKey getDuplicateKey() {
+
+        return DuplicateKey.fromValue(SystemVariableUtil.getValue(Constants.FAULTY_NAMED_DUPLICATE_KEY, null),
+                DuplicateKey.NAME);
+    }
+
+    /**
+     * Returns the vendor of the jarFile by evaluating its bundle attributes.
      *
-     * @param man     Manifest of the jarFile
-     * @param jarFile jarFile for which the type is needed
-     * @return type of the jarFile
+     * @param name    Bundle-Name of the jarFile
+     * @param vendor  Bundle-Vendor of the jarFile
+     * @param jarFile jarFile for which the vendor is needed
+     * @return vendor of the jarFile
      */
-    private String getType(Manifest man, LibraryDetails jarFile) {
+    private String getVendor(String name, String vendor, LibraryDetails jarFile) {
 
-        if (jarFile.getParent() == null)
-            return (jarFile.isBundle()) ? Constants.JAR_TYPE_BUNDLE : Constants.JAR_TYPE_JAR;
-        else return Constants.JAR_TYPE_JAR_IN_BUNDLE;
+        if ((name != null && name.startsWith("org.wso2")) || (jarFile.getFileName().startsWith("org.wso2")) || jarFile.getVersion().contains("wso2")) {
+            return "wso2";
+        } else {
+            return vendor;
+        }
 
     }
 
     /**
-     * Returns whether a given jar is a bundle or not
-     *
-     * @param manifest Manifest of the jar file
-     * @return true/false
+     * Lists the direct jars of a pack, handing each of them to the consumer as soon as it is found.
      */
-    private boolean getIsBundle(Manifest manifest) {
+    private interface DirectJarSource {
 
-        Attributes map = manifest.getMainAttributes();
-        String bundleManifest = map.getValue("Bundle-ManifestVersion");
-        return bundleManifest != null;
+        void forEach(Consumer<PendingArchive> consumer) throws LicenseManagerRuntimeException;
     }
 
     /**
-     * Checks whether a jar file contains other jar files inside it.
-     *
-     * @param filePath absolute path to the jar
-     * @return true/false
-     * @throws LicenseManagerRuntimeException if file input stream fails.
+     * A jar found in the pack along with its content, waiting to be inspected. The content is either already read
+     * from the parent jar, is read from the zip file of the pack when the jar is inspected, or is not needed at all
+     * since the jar is already known to the library metadata cache.
      */
-    private boolean checkInnerJars(String filePath) throws LicenseManagerRuntimeException {
+    private static class PendingArchive {
+
+        private final LibraryDetails library;
+        private SpillBuffer content;
+        private String checksum;
+        private final ZipFile pack;
+        private final ZipEntry packEntry;
+        private Runnable onRelease;
+
+        PendingArchive(LibraryDetails library, SpillBuffer content) {
+
+            this(library, content, (String) null);
+        }
 
-        boolean containsJars = false;
+        PendingArchive(LibraryDetails library, SpillBuffer content, Runnable onRelease) {
 
-        try (ZipInputStream zip = new ZipInputStream(new FileInputStream(filePath))) {
-            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
-                if (entry.getName().endsWith(".jar") || entry.getName().endsWith(".mar")) {
-                    containsJars = true;
-                    break;
+            this(library, content, (String) null);
+            this.onRelease = onRelease;
+        }
+
+        PendingArchive(LibraryDetails library, SpillBuffer content, String checksum) {
+
+            this.library = library;
+            this.content = content;
+            this.checksum = checksum;
+            this.pack = null;
+            this.packEntry = null;
+        }
+
+        PendingArchive(LibraryDetails library, ZipFile pack, ZipEntry packEntry) {
+
+            this.library = library;
+            this.pack = pack;
+            this.packEntry = packEntry;
+            if (packEntry.getCrc() >= 0 && packEntry.getSize() >= 0) {
+                this.checksum = LibraryMetadataCache.checksum(packEntry.getCrc(), packEntry.getSize());
+            }
+        }
+
+        /**
+         * @return cache key of the jar, computed from the content if it is not available from a central directory.
+         * Computing it reads the whole jar.
+         * @throws IOException if reading the content fails
+         */
+        String checksum() throws IOException {
+
+            if (checksum == null && content != null) {
+                checksum = LibraryMetadataCache.checksum(content.getCrc(), content.size());
+            }
+            return checksum;
+        }
+
+        /**
+         * @return content of the jar, read from the pack if it was not read yet
+         * @throws IOException if reading the pack fails
+         */
+        SpillBuffer open(File spillDirectory, long spillThreshold, ScanBudget scanBudget) throws IOException {
+
+            if (content == null) {
+                if (pack == null) {
+                    throw new IOException("Content of the jar is not available");
+                }
+                try (InputStream in = scanBudget.track(pack.getInputStream(packEntry))) {
+                    content = SpillBuffer.read(in, spillDirectory, spillThreshold);
                 }
             }
-        } catch (IOException e) {
-            throw new LicenseManagerRuntimeException("Failed to check the inner jars. ", e);
+            return content;
+        }
+
+        /**
+         * Release the content of a jar which will not be inspected.
+         */
+        void discard() {
+
+            if (content != null) {
+                content.close();
+            }
         }
 
-        return containsJars;
+        /**
+         * Tell the source of the jar that the jar is done with, whether it was scanned or not.
+         */
+        void release() {
+
+            if (onRelease != null) {
+                Runnable callback = onRelease;
+                onRelease = null;
+                callback.run();
+            }
+        }
     }
 
     /**
-     * Remove the duplicates in the faulty named jars.
-     *
-     * @param faultyNamedJars list of jars in which the names and version are missing
-     * @return unique list of jars with faulty names.
+     * Scans a jar and forks a task for each of its inner jars.
      */
-    public static List<LibraryDetails> removeDuplicates(List<LibraryDetails> faultyNamedJars) {
+    private class ScanTask extends RecursiveTask<ScanResult> {
+
+        private final PendingArchive pendingArchive;
+        private final int depth;
+        private final List<ScanTask> children;
+        private final File spillDirectory;
+        private final AtomicBoolean failed;
+
+        /**
+         * Task to scan a single jar.
+         */
+        ScanTask(PendingArchive pendingArchive, int depth, File spillDirectory, AtomicBoolean failed) {
+
+            this.pendingArchive = pendingArchive;
+            this.depth = depth;
+            this.children = new ArrayList<>();
+            this.spillDirectory = spillDirectory;
+            this.failed = failed;
+        }
 
-        List<LibraryDetails> faultyNamedUniqueJarFiles = new ArrayList<>();
-        for (LibraryDetails jarFile : faultyNamedJars) {
-            boolean newJar = true;
-            for (LibraryDetails uniqueJarFile : faultyNamedUniqueJarFiles) {
-                if (jarFile.getName().equals(uniqueJarFile.getName())) {
-                    newJar = false;
+        @Override
+        protected ScanResult compute() {
+
+            ScanResult result = new ScanResult();
+            if (failed.get()) {
+                pendingArchive.discard();
+                pendingArchive.release();
+                return result;
+            }
+            try {
+                scanBudget.checkTime();
+                Map<String, LibraryMetadataCache.CachedLibrary> cachedTree =
+                        libraryMetadataCache.lookup(pendingArchive.checksum());
+                if (cachedTree != null) {
+                    // Known jar, restore it and its inner jars without reading it.
+                    pendingArchive.discard();
+                    restore(pendingArchive.library, pendingArchive.checksum(), cachedTree, result);
+                    return result;
+                }
+                try (SpillBuffer content = pendingArchive.open(spillDirectory, spillThreshold, scanBudget)) {
+                    scan(content, result);
+                }
+            } catch (IOException e) {
+                failed.set(true);
+                if (e.getCause() instanceof ScanBudgetExceededException) {
+                    throw new ScanFailure((ScanBudgetExceededException) e.getCause());
+                }
+                throw new ScanFailure(new LicenseManagerRuntimeException("Failed to read the jar " +
+                        pendingArchive.library.getArchivePath(), e));
+            } catch (LicenseManagerRuntimeException e) {
+                failed.set(true);
+                throw new ScanFailure(e);
+            } finally {
+                pendingArchive.release();
+            }
+
+            for (ScanTask child : children) {
+                child.fork();
+            }
+
+            // Join every child so that all of them release their content, even if one of them fails.
+            ScanFailure failure = null;
+            for (ScanTask child : children) {
+                try {
+                    result.append(child.join());
+                } catch (ScanFailure e) {
+                    failure = (failure == null) ? e : failure;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return result;
+        }
+
+        private void scan(SpillBuffer content, ScanResult result) throws LicenseManagerRuntimeException,
+                IOException {
+
+            LibraryDetails jarFile = pendingArchive.library;
+            String checksum = pendingArchive.checksum();
+            if (checksum == null) {
+                checksum = LibraryMetadataCache.checksum(content.getCrc(), content.size());
+            }
+            jarFile.setChecksum(checksum);
+            JarInspection inspection = JarInspection.inspect(content, jarFile.getArchivePath(), depth, scanBudget,
+                    spillDirectory, spillThreshold, libraryMetadataCache::isComplete);
+
+            // Get information from the Manifest file.
+            if (inspection.hasManifest()) {
+                jarFile.setisBundle(inspection.isBundle());
+                jarFile.setType(getType(jarFile));
+                jarFile.setVendor(getVendor(inspection.getBundleName(), inspection.getBundleVendor(), jarFile));
+                if (!jarFile.isValidName()) {
+                    result.faultyNamedJars.add(jarFile);
+                } else {
+                    result.jarFilesInPack.add(jarFile);
+                }
+                libraryListener.accept(jarFile);
+            }
+
+            // If a jarFile contains jars inside, continue with the content read from the parent jarFile.
+            LibraryMetadataCache.CachedLibrary cachedLibrary = createCachedLibrary(jarFile, inspection);
+            for (JarInspection.InnerJar innerJar : inspection.getInnerJars()) {
+                String entryName = innerJar.getEntryName();
+                String fileName = entryName.substring(entryName.lastIndexOf('/') + 1);
+                LibraryDetails innerJarFile = createJarObject(fileName,
+                        jarFile.getArchivePath() + "!/" + entryName, jarFile);
+                children.add(new ScanTask(new PendingArchive(innerJarFile, innerJar.getContent(),
+                        innerJar.getChecksum()), depth + 1, spillDirectory, failed));
+                cachedLibrary.getInnerJars().put(entryName, innerJar.getChecksum());
+            }
+            libraryMetadataCache.put(checksum, cachedLibrary);
+        }
+
+        private LibraryMetadataCache.CachedLibrary createCachedLibrary(LibraryDetails jarFile,
+                                                                       JarInspection inspection) {
+
+            LibraryMetadataCache.CachedLibrary cachedLibrary = new LibraryMetadataCache.CachedLibrary();
+            cachedLibrary.setFileName(jarFile.getFileName());
+            cachedLibrary.setName(jarFile.getName());
+            cachedLibrary.setVersion(jarFile.getVersion());
+            cachedLibrary.setValidName(jarFile.isValidName());
+            cachedLibrary.setHasManifest(inspection.hasManifest());
+            cachedLibrary.setBundle(inspection.isBundle());
+            cachedLibrary.setBundleName(inspection.getBundleName());
+            cachedLibrary.setBundleVendor(inspection.getBundleVendor());
+            cachedLibrary.setVendor(jarFile.getVendor());
+            return cachedLibrary;
+        }
+
+        /**
+         * Restore a jar and its inner jars from a tree copied out of the library metadata cache.
+         */
+        private void restore(LibraryDetails jarFile, String checksum,
+                             Map<String, LibraryMetadataCache.CachedLibrary> cachedTree, ScanResult result) {
+
+            LibraryMetadataCache.CachedLibrary cachedLibrary = cachedTree.get(checksum);
+            jarFile.setChecksum(checksum);
+            if (cachedLibrary.hasManifest()) {
+                jarFile.setisBundle(cachedLibrary.isBundle());
+                jarFile.setType(getType(jarFile));
+                if (jarFile.getFileName().equals(cachedLibrary.getFileName())) {
+                    jarFile.setVendor(cachedLibrary.getVendor());
+                } else {
+                    // Same content under another file name, only the bundle attributes can be reused.
+                    jarFile.setVendor(getVendor(cachedLibrary.getBundleName(), cachedLibrary.getBundleVendor(),
+                            jarFile));
                 }
+                if (!jarFile.isValidName()) {
+                    result.faultyNamedJars.add(jarFile);
+                } else {
+                    result.jarFilesInPack.add(jarFile);
+                }
+                libraryListener.accept(jarFile);
             }
-            if (newJar) {
-                faultyNamedUniqueJarFiles.add(jarFile);
+
+            for (Map.Entry<String, String> innerJar : cachedLibrary.getInnerJars().entrySet()) {
+                String entryName = innerJar.getKey();
+                String fileName = entryName.substring(entryName.lastIndexOf('/') + 1);
+                LibraryDetails innerJarFile = createJarObject(fileName,
+                        jarFile.getArchivePath() + "!/" + entryName, jarFile);
+                restore(innerJarFile, innerJar.getValue(), cachedTree, result);
             }
         }
-        return faultyNamedUniqueJarFiles;
     }
 
-    private String setVendor(Manifest man, LibraryDetails jarFile) {
+    /**
+     * Jars found by a scan task and its inner tasks.
+     */
+    private static class ScanResult {
+
+        private final List<LibraryDetails> jarFilesInPack = new ArrayList<>();
+        private final List<LibraryDetails> faultyNamedJars = new ArrayList<>();
+
+        void append(ScanResult other) {
+
+            jarFilesInPack.addAll(other.jarFilesInPack);
+            faultyNamedJars.addAll(other.faultyNamedJars);
+        }
+    }
+
+    /**
+     * Carries a failure out of a scan task.
+     */
+    private static class ScanFailure extends RuntimeException {
 
-        Attributes map = man.getMainAttributes();
-        String name = map.getValue("Bundle-Name");
-        if ((name != null && name.startsWith("org.wso2")) || (jarFile.getJarContent().getName().startsWith("org.wso2")) || jarFile.getVersion().contains("wso2")) {
-            return "wso2";
-        } else {
-            return map.getValue("Bundle-Vendor");
+        ScanFailure(LicenseManagerRuntimeException cause) {
+
+            super(cause);
         }
 
+        @Override
+        public synchronized LicenseManagerRuntimeException getCause() {
+
+            return (LicenseManagerRuntimeException) super.getCause();
+        }
     }
 }
@@ -0,0 +1,88 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.util;
+
+/**
+ * Splits the file name of a jar into its name and version in a single pass, without creating intermediate strings.
+ * The version starts after the last '-' or '_' which is followed by a digit, 'S' (SNAPSHOT) or 'r' (release
+ * qualifiers such as r1234), and ends before the ".jar" or ".mar" extension.
+ */
+public class JarFileNameParser {
+
+    private static final int EXTENSION_LENGTH = 4;
+
+    /**
+     * Hide the public constructor.
+     */
+    private JarFileNameParser() {
+
+    }
+
+    /**
+     * Find where the ".jar" or ".mar" extension of a file name starts.
+     *
+     * @param fileName file name of the jar
+     * @return index of the extension, or the length of the file name if it has no such extension
+     */
+    public static int getExtensionIndex(CharSequence fileName) {
+
+        int index = fileName.length() - EXTENSION_LENGTH;
+        if (index >= 0 && fileName.charAt(index) == '.' && fileName.charAt(index + 2) == 'a' &&
+                fileName.charAt(index + 3) == 'r' &&
+                (fileName.charAt(index + 1) == 'j' || fileName.charAt(index + 1) == 'm')) {
+            return index;
+        }
+        return fileName.length();
+    }
+
+    /**
+     * Find the separator between the name and the version of a file name. The name is scanned backwards from the
+     * end, so the last separator is found without looking at the rest of the name.
+     *
+     * @param fileName file name of the jar
+     * @param end      index where the version ends, usually the index of the extension
+     * @return index of the separator, or -1 if the file name has no version
+     */
+    public static int getSplitIndex(CharSequence fileName, int end) {
+
+        for (int i = end - 2; i >= 0; i--) {
+            char c = fileName.charAt(i);
+            if (c == '-' || c == '_') {
+                char next = fileName.charAt(i + 1);
+                if ((next >= '0' && next <= '9') || next == 'S' || next == 'r') {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the separator between the name and the version of a file name, ignoring the extension.
+     *
+     * @param fileName file name of the jar
+     * @return index of the separator, or -1 if the file name has no version
+     */
+    public static int getSplitIndex(CharSequence fileName) {
+
+        return getSplitIndex(fileName, getExtensionIndex(fileName));
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.util;
+
+import org.wso2.internal.apps.license.manager.exception.LicenseManagerRuntimeException;
+import org.wso2.internal.apps.license.manager.exception.ScanBudgetExceededException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Everything needed from a single jar, gathered by opening the jar once: whether it has a manifest, the bundle
+ * attributes and the content of the inner jars.
+ */
+public class JarInspection implements Closeable {
+
+    private static final String BUNDLE_MANIFEST_VERSION = "Bundle-ManifestVersion";
+    private static final String BUNDLE_NAME = "Bundle-Name";
+    private static final String BUNDLE_VENDOR = "Bundle-Vendor";
+
+    private boolean hasManifest;
+    private boolean bundle;
+    private String bundleName;
+    private String bundleVendor;
+    private final List<InnerJar> innerJars = new ArrayList<>();
+
+    private JarInspection() {
+
+    }
+
+    /**
+     * Inspect a jar. A jar on disk is read through its central directory, a jar held in memory is read with a
+     * single pass over its stream. The entries, the depth of the inner jars and the bytes read out of the jar are
+     * accounted for in the budget while the jar is read.
+     *
+     * @param content        content of the jar
+     * @param archivePath    path of the jar within the pack
+     * @param depth          nesting depth of the jar, the direct jars of a pack are at depth 1
+     * @param budget         resource budget of the scan
+     * @param spillDirectory directory to hold inner jars which are too large to be kept in memory
+     * @param spillThreshold maximum size of an inner jar kept in memory
+     * @param knownJars      tells whether an inner jar is already known by its checksum, in which case the content
+     *                       is not read if the checksum is available from the central directory
+     * @return the inspection of the jar
+     * @throws ScanBudgetExceededException    if the jar exceeds the budget.
+     * @throws LicenseManagerRuntimeException if reading the jar fails.
+     */
+    public static JarInspection inspect(SpillBuffer content, String archivePath, int depth, ScanBudget budget,
+                                        File spillDirectory, long spillThreshold, Predicate<String> knownJars)
+            throws LicenseManagerRuntimeException {
+
+        JarInspection inspection = new JarInspection();
+        try {
+            if (content.getFile() != null) {
+                inspection.readFromCentralDirectory(content.getFile(), archivePath, depth, budget, spillDirectory,
+                        spillThreshold, knownJars);
+            } else {
+                inspection.readFromStream(content.openStream(), archivePath, depth, budget, spillDirectory,
+                        spillThreshold);
+            }
+        } catch (IOException e) {
+            inspection.close();
+            if (e.getCause() instanceof ScanBudgetExceededException) {
+                throw (ScanBudgetExceededException) e.getCause();
+            }
+            throw new LicenseManagerRuntimeException("Failed to inspect the jar. ", e);
+        } catch (ScanBudgetExceededException e) {
+            inspection.close();
+            throw e;
+        }
+        return inspection;
+    }
+
+    private void readFromCentralDirectory(File file, String archivePath, int depth, ScanBudget budget,
+                                          File spillDirectory, long spillThreshold, Predicate<String> knownJars)
+            throws IOException, ScanBudgetExceededException {
+
+        try (ZipFile zipFile = new ZipFile(file)) {
+            budget.addEntries(zipFile.size());
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (isManifest(entry)) {
+                    try (InputStream in = zipFile.getInputStream(entry)) {
+                        readBundleAttributes(in);
+                    }
+                } else if (isInnerJar(entry)) {
+                    budget.checkDepth(depth + 1, archivePath + "!/" + entry.getName());
+                    String checksum = (entry.getCrc() < 0 || entry.getSize() < 0) ? null :
+                            LibraryMetadataCache.checksum(entry.getCrc(), entry.getSize());
+                    if (checksum != null && knownJars.test(checksum)) {
+                        innerJars.add(new InnerJar(entry.getName(), checksum, null));
+                    } else {
+                        try (InputStream in = budget.track(zipFile.getInputStream(entry))) {
+                            addInnerJar(entry.getName(), SpillBuffer.read(in, spillDirectory, spillThreshold));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void readFromStream(InputStream in, String archivePath, int depth, ScanBudget budget,
+                                File spillDirectory, long spillThreshold)
+            throws IOException, ScanBudgetExceededException {
+
+        try (ZipInputStream zip = new ZipInputStream(in)) {
+            InputStream trackedZip = budget.track(zip);
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                budget.addEntries(1);
+                if (isManifest(entry)) {
+                    readBundleAttributes(zip);
+                } else if (isInnerJar(entry)) {
+                    budget.checkDepth(depth + 1, archivePath + "!/" + entry.getName());
+                    addInnerJar(entry.getName(), SpillBuffer.read(trackedZip, spillDirectory, spillThreshold));
+                }
+            }
+        }
+    }
+
+    private void addInnerJar(String entryName, SpillBuffer content) throws IOException {
+
+        innerJars.add(new InnerJar(entryName, LibraryMetadataCache.checksum(content.getCrc(), content.size()),
+                content));
+    }
+
+    private void readBundleAttributes(InputStream in) throws IOException {
+
+        Map<String, String> headers = ManifestHeaderReader.read(in, BUNDLE_MANIFEST_VERSION, BUNDLE_NAME,
+                BUNDLE_VENDOR);
+        hasManifest = true;
+        bundle = headers.containsKey(BUNDLE_MANIFEST_VERSION);
+        bundleName = headers.get(BUNDLE_NAME);
+        bundleVendor = headers.get(BUNDLE_VENDOR);
+    }
+
+    private static boolean isManifest(ZipEntry entry) {
+
+        return JarFile.MANIFEST_NAME.equalsIgnoreCase(entry.getName());
+    }
+
+    private static boolean isInnerJar(ZipEntry entry) {
+
+        return !entry.isDirectory() && (entry.getName().endsWith(".jar") || entry.getName().endsWith(".mar"));
+    }
+
+    /**
+     * @return true if the jar contains a manifest
+     */
+    public boolean hasManifest() {
+
+        return hasManifest;
+    }
+
+    public boolean isBundle() {
+
+        return bundle;
+    }
+
+    public String getBundleName() {
+
+        return bundleName;
+    }
+
+    public String getBundleVendor() {
+
+        return bundleVendor;
+    }
+
+    /**
+     * @return inner jars in the order they appear in the jar
+     */
+    public List<InnerJar> getInnerJars() {
+
+        return innerJars;
+    }
+
+    /**
+     * Release the content of the inner jars.
+     */
+    @Override
+    public void close() {
+
+        for (InnerJar innerJar : innerJars) {
+            if (innerJar.getContent() != null) {
+                innerJar.getContent().close();
+            }
+        }
+    }
+
+    /**
+     * A jar inside the inspected jar.
+     */
+    public static class InnerJar {
+
+        private final String entryName;
+        private final String checksum;
+        private final SpillBuffer content;
+
+        InnerJar(String entryName, String checksum, SpillBuffer content) {
+
+            this.entryName = entryName;
+            this.checksum = checksum;
+            this.content = content;
+        }
+
+        public String getEntryName() {
+
+            return entryName;
+        }
+
+        public String getChecksum() {
+
+            return checksum;
+        }
+
+        /**
+         * @return content of the inner jar, or null if the jar is already known and was not read
+         */
+        public SpillBuffer getContent() {
+
+            return content;
+        }
+    }
+}
@@ -27,10 +27,11 @@ import com.google.gson.JsonParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wso2.internal.apps.license.manager.model.LibraryDetails;
+import org.wso2.internal.apps.license.manager.model.PipelineStatistics;
+import org.wso2.internal.apps.license.manager.model.UploadedPack;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -48,25 +49,129 @@ public class JsonUtils {
     private static final Logger log = LoggerFactory.getLogger(JsonUtils.class);
 
     /**
-     * Create a json array from the list of uploaded pack.
-     * {name : nameOfThePack}
+     * Create a json array from the list of uploaded packs.
+     * { name : nameOfThePack, size : xxx, lastModified : xxx }
      *
-     * @param listOfPacks list of packs as an array list of strings
+     * @param listOfPacks uploaded packs
      * @return json array
      */
-    public static JsonArray getListOfPacksUploadedAsJson(ArrayList<String> listOfPacks) {
+    public static JsonArray getListOfPacksUploadedAsJson(List<UploadedPack> listOfPacks) {
 
         JsonArray uploadedPacks = new JsonArray();
-
-        // Obtain the list of the available zip files.
-        for (String listOfPack : listOfPacks) {
+        for (UploadedPack pack : listOfPacks) {
             JsonObject ob = new JsonObject();
-            ob.addProperty("name", listOfPack);
+            ob.addProperty("name", pack.getName());
+            ob.addProperty("size", pack.getSize());
+            ob.addProperty("lastModified", pack.getLastModified());
             uploadedPacks.add(ob);
         }
         return uploadedPacks;
     }
 
+    /**
+     * Create a json object from the central directory entries of a pack.
+     * { totalEntries : xxx, totalSize : xxx, totalCompressedSize : xxx, jarCount : xxx,
+     * entries : [{ name : xxx, size : xxx, compressedSize : xxx, crc : xxx }] }
+     *
+     * @param entries entries listed in the central directory of the pack
+     * @return json object of the pack inventory
+     */
+    public static JsonObject getPackInventoryAsJson(List<CentralDirectoryReader.Entry> entries) {
+
+        JsonArray entriesJson = new JsonArray();
+        long totalSize = 0;
+        long totalCompressedSize = 0;
+        int jarCount = 0;
+
+        for (CentralDirectoryReader.Entry entry : entries) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            JsonObject ob = new JsonObject();
+            ob.addProperty("name", entry.getName());
+            ob.addProperty("size", entry.getSize());
+            ob.addProperty("compressedSize", entry.getCompressedSize());
+            ob.addProperty("crc", Long.toHexString(entry.getCrc()));
+            entriesJson.add(ob);
+            totalSize += entry.getSize();
+            totalCompressedSize += entry.getCompressedSize();
+            if (entry.getName().endsWith(".jar") || entry.getName().endsWith(".mar")) {
+                jarCount++;
+            }
+        }
+
+        JsonObject inventory = new JsonObject();
+        inventory.addProperty("totalEntries", entriesJson.size());
+        inventory.addProperty("totalSize", totalSize);
+        inventory.addProperty("totalCompressedSize", totalCompressedSize);
+        inventory.addProperty("jarCount", jarCount);
+        inventory.add("entries", entriesJson);
+        return inventory;
+    }
+
+    /**
+     * Create a json array from the libraries published while a pack is scanned.
+     * { index : xxx, jarFileName : xxx, name : xxx, version : xxx, type : xxx, vendor : xxx, validName : xxx,
+     * archivePath : xxx }
+     *
+     * @param libraries libraries published since the offset
+     * @param offset    index of the first library
+     * @return json array of the libraries
+     */
+    public static JsonArray getPublishedLibrariesAsJsonArray(List<LibraryDetails> libraries, int offset) {
+
+        JsonArray librariesJson = new JsonArray();
+        for (int i = 0; i < libraries.size(); i++) {
+            LibraryDetails library = libraries.get(i);
+            JsonObject libraryJson = new JsonObject();
+            libraryJson.addProperty("index", offset + i);
+            libraryJson.addProperty("jarFileName", library.getFileName());
+            libraryJson.addProperty("name", library.getName());
+            libraryJson.addProperty("version", library.getVersion());
+            libraryJson.addProperty("type", library.getType());
+            libraryJson.addProperty("vendor", library.getVendor());
+            libraryJson.addProperty("validName", library.isValidName());
+            libraryJson.addProperty("archivePath", library.getArchivePath());
+            librariesJson.add(libraryJson);
+        }
+        return librariesJson;
+    }
+
+    /**
+     * Create a json object from the statistics of a pipeline.
+     * { downloadedBytes : xxx, downloadQueueDepth : xxx, scanQueueDepth : xxx, scannedJars : xxx }
+     *
+     * @param statistics statistics of the pipeline
+     * @return json object of the statistics
+     */
+    public static JsonObject getPipelineStatisticsAsJson(PipelineStatistics statistics) {
+
+        JsonObject statisticsJson = new JsonObject();
+        statisticsJson.addProperty("downloadedBytes", statistics.getDownloadedBytes().get());
+        statisticsJson.addProperty("downloadQueueDepth", statistics.getDownloadQueueDepth().get());
+        statisticsJson.addProperty("scanQueueDepth", statistics.getScanQueueDepth().get());
+        statisticsJson.addProperty("scannedJars", statistics.getScannedJars().get());
+        return statisticsJson;
+    }
+
+    /**
+     * Create a json object from the statistics of the storage janitor.
+     * { reclaimedBytes : xxx, deletedArtifacts : xxx, usedBytes : xxx, quotaBytes : xxx, trackedTasks : xxx }
+     *
+     * @param storageJanitor the storage janitor
+     * @return json object of the statistics
+     */
+    public static JsonObject getStorageJanitorStatisticsAsJson(StorageJanitor storageJanitor) {
+
+        JsonObject statisticsJson = new JsonObject();
+        statisticsJson.addProperty("reclaimedBytes", storageJanitor.getReclaimedBytes());
+        statisticsJson.addProperty("deletedArtifacts", storageJanitor.getDeletedArtifacts());
+        statisticsJson.addProperty("usedBytes", storageJanitor.getUsedBytes());
+        statisticsJson.addProperty("quotaBytes", storageJanitor.getQuotaBytes());
+        statisticsJson.addProperty("trackedTasks", storageJanitor.getTrackedTasks());
+        return statisticsJson;
+    }
+
     /**
      * Create a json array from the list of faulty named jars.
      * { index : xxx, jarFileName : xxx, name : xxx, version : xxx }
@@ -80,7 +185,7 @@ public class JsonUtils {
         for (int i = 0; i < errorJarFileList.size(); i++) {
             JsonObject currentJar = new JsonObject();
             currentJar.addProperty("index", i);
-            currentJar.addProperty("jarFileName", errorJarFileList.get(i).getJarContent().getName());
+            currentJar.addProperty("jarFileName", errorJarFileList.get(i).getFileName());
             currentJar.addProperty("name", errorJarFileList.get(i).getName());
             currentJar.addProperty("version", errorJarFileList.get(i).getVersion());
             faultyNamedJars.add(currentJar);
@@ -138,7 +243,7 @@ public class JsonUtils {
         for (int i = 0; i < licenseMissingJars.size(); i++) {
             JsonObject licenseMissingJar = new JsonObject();
             licenseMissingJar.addProperty("index", i);
-            licenseMissingJar.addProperty("name", licenseMissingJars.get(i).getJarContent().getName());
+            licenseMissingJar.addProperty("name", licenseMissingJars.get(i).getFileName());
             licenseMissingJar.addProperty("version", licenseMissingJars.get(i).getVersion());
             licenseMissingJar.addProperty("type", licenseMissingJars.get(i).getType());
             licenseMissingJar.addProperty("previousLicense", licenseMissingJars.get(i).getLicenseKey());
@@ -0,0 +1,455 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.msf4j.util.SystemVariableUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A singleton cache of the details derived from each jar, keyed by the CRC32 and the size of the jar content.
+ * The cache is shared across packs and persisted to disk, so jars which were scanned before are not read again.
+ * It holds a bounded number of jars and the least recently used ones are evicted first.
+ */
+public class LibraryMetadataCache {
+
+    private static final Logger log = LoggerFactory.getLogger(LibraryMetadataCache.class);
+    private static final int FORMAT_VERSION = 1;
+    private static LibraryMetadataCache libraryMetadataCache = null;
+
+    private final LinkedHashMap<String, CachedLibrary> libraries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final File cacheFile;
+    private final int maxEntries;
+    private volatile boolean modified = false;
+
+    /**
+     * @param cacheFile  file the cache is persisted to, or null to keep it in memory only
+     * @param maxEntries maximum number of jars held by the cache
+     */
+    LibraryMetadataCache(File cacheFile, int maxEntries) {
+
+        this.cacheFile = cacheFile;
+        this.maxEntries = maxEntries;
+        if (cacheFile != null && cacheFile.isFile()) {
+            load();
+        }
+    }
+
+    public static synchronized LibraryMetadataCache getLibraryMetadataCache() {
+
+        if (libraryMetadataCache == null) {
+            int maxEntries = Integer.parseInt(SystemVariableUtil.getValue(Constants.LIBRARY_CACHE_MAX_ENTRIES,
+                    String.valueOf(Constants.DEFAULT_LIBRARY_CACHE_MAX_ENTRIES)));
+            libraryMetadataCache = new LibraryMetadataCache(getConfiguredFile(), maxEntries);
+        }
+        return libraryMetadataCache;
+    }
+
+    /**
+     * @return file of the cache as configured, or null if it is not configured
+     */
+    static File getConfiguredFile() {
+
+        String cachePath = SystemVariableUtil.getValue(Constants.LIBRARY_CACHE_PATH, null);
+        if (cachePath == null) {
+            String pathToStorage = SystemVariableUtil.getValue(Constants.FILE_DOWNLOAD_PATH, null);
+            cachePath = (pathToStorage == null) ? null : pathToStorage + Constants.LIBRARY_CACHE_FILE_NAME;
+        }
+        return (cachePath == null) ? null : new File(cachePath);
+    }
+
+    /**
+     * Build the cache key of a jar.
+     *
+     * @param crc  CRC32 of the jar content
+     * @param size size of the jar content in bytes
+     * @return the cache key
+     */
+    public static String checksum(long crc, long size) {
+
+        return Long.toHexString(crc) + "-" + size;
+    }
+
+    /**
+     * Look up a jar and count the hit or the miss. A jar is a hit only if all of its inner jars are cached as well,
+     * so the whole tree can be restored without reading the jar. The tree is copied at once, so jars evicted
+     * meanwhile do not leave holes in it.
+     *
+     * @param checksum cache key of the jar, may be null if it is not known
+     * @return the cached details of the jar and of all of its inner jars mapped by their cache keys, or null
+     */
+    public Map<String, CachedLibrary> lookup(String checksum) {
+
+        if (checksum != null) {
+            Map<String, CachedLibrary> tree = new HashMap<>();
+            synchronized (libraries) {
+                if (collect(checksum, tree)) {
+                    hits.incrementAndGet();
+                    return tree;
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Add a jar and all of its inner jars to a tree. Must be called holding the lock of the libraries.
+     *
+     * @param checksum cache key of the jar
+     * @param tree     cached details mapped by their cache keys
+     * @return true if the jar and all of its inner jars are cached
+     */
+    private boolean collect(String checksum, Map<String, CachedLibrary> tree) {
+
+        if (tree.containsKey(checksum)) {
+            return true;
+        }
+        CachedLibrary library = libraries.get(checksum);
+        if (library == null) {
+            return false;
+        }
+        tree.put(checksum, library);
+        for (String innerChecksum : library.getInnerJars().values()) {
+            if (!collect(innerChecksum, tree)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param checksum cache key of the jar
+     * @return true if the jar and all of its inner jars are cached
+     */
+    public boolean isComplete(String checksum) {
+
+        synchronized (libraries) {
+            CachedLibrary library = libraries.get(checksum);
+            if (library == null) {
+                return false;
+            }
+            for (String innerChecksum : library.getInnerJars().values()) {
+                if (!isComplete(innerChecksum)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public void put(String checksum, CachedLibrary library) {
+
+        synchronized (libraries) {
+            libraries.put(checksum, library);
+            evict();
+        }
+        modified = true;
+    }
+
+    /**
+     * Remove the least recently used jars until the cache fits its limit. A jar whose inner jars were evicted is no
+     * longer complete, so it is scanned again and the inner jars are cached again.
+     */
+    private void evict() {
+
+        Iterator<CachedLibrary> iterator = libraries.values().iterator();
+        while (libraries.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    public long getHits() {
+
+        return hits.get();
+    }
+
+    public long getMisses() {
+
+        return misses.get();
+    }
+
+    public int size() {
+
+        synchronized (libraries) {
+            return libraries.size();
+        }
+    }
+
+    /**
+     * Write the cache to disk if it was modified since it was last written.
+     */
+    public synchronized void save() {
+
+        if (cacheFile == null || !modified) {
+            return;
+        }
+        modified = false;
+
+        File tempFile = getTemporaryFile(cacheFile);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(
+                new FileOutputStream(tempFile))))) {
+            out.writeInt(FORMAT_VERSION);
+            // Written from the least to the most recently used, so the order survives a restart.
+            Map<String, CachedLibrary> snapshot;
+            synchronized (libraries) {
+                snapshot = new LinkedHashMap<>(libraries);
+            }
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, CachedLibrary> entry : snapshot.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().write(out);
+            }
+        } catch (IOException e) {
+            log.error("Failed to write the library metadata cache. " + e.getMessage(), e);
+            return;
+        }
+
+        try {
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.error("Failed to replace the library metadata cache. " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param cacheFile file of the cache
+     * @return file the cache is written to before it replaces the file of the cache
+     */
+    static File getTemporaryFile(File cacheFile) {
+
+        return new File(cacheFile.getAbsolutePath() + ".tmp");
+    }
+
+    private void load() {
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(
+                new FileInputStream(cacheFile))))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                log.info("Ignoring the library metadata cache written in an older format.");
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String checksum = in.readUTF();
+                CachedLibrary library = CachedLibrary.read(in);
+                synchronized (libraries) {
+                    libraries.put(checksum, library);
+                    evict();
+                }
+            }
+            // Rewrite the cache if it was trimmed to a lower limit.
+            modified = size() < count;
+            log.info("Loaded " + size() + " libraries into the library metadata cache.");
+        } catch (IOException e) {
+            synchronized (libraries) {
+                libraries.clear();
+            }
+            log.error("Failed to read the library metadata cache. " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Details derived from a single jar.
+     */
+    public static class CachedLibrary {
+
+        private String fileName;
+        private String name;
+        private String version;
+        private boolean validName;
+        private boolean hasManifest;
+        private boolean bundle;
+        private String bundleName;
+        private String bundleVendor;
+        private String vendor;
+        private Map<String, String> innerJars = new LinkedHashMap<>();
+
+        public String getFileName() {
+
+            return fileName;
+        }
+
+        public void setFileName(String fileName) {
+
+            this.fileName = fileName;
+        }
+
+        public String getName() {
+
+            return name;
+        }
+
+        public void setName(String name) {
+
+            this.name = name;
+        }
+
+        public String getVersion() {
+
+            return version;
+        }
+
+        public void setVersion(String version) {
+
+            this.version = version;
+        }
+
+        public boolean isValidName() {
+
+            return validName;
+        }
+
+        public void setValidName(boolean validName) {
+
+            this.validName = validName;
+        }
+
+        public boolean hasManifest() {
+
+            return hasManifest;
+        }
+
+        public void setHasManifest(boolean hasManifest) {
+
+            this.hasManifest = hasManifest;
+        }
+
+        public boolean isBundle() {
+
+            return bundle;
+        }
+
+        public void setBundle(boolean bundle) {
+
+            this.bundle = bundle;
+        }
+
+        public String getBundleName() {
+
+            return bundleName;
+        }
+
+        public void setBundleName(String bundleName) {
+
+            this.bundleName = bundleName;
+        }
+
+        public String getBundleVendor() {
+
+            return bundleVendor;
+        }
+
+        public void setBundleVendor(String bundleVendor) {
+
+            this.bundleVendor = bundleVendor;
+        }
+
+        public String getVendor() {
+
+            return vendor;
+        }
+
+        public void setVendor(String vendor) {
+
+            this.vendor = vendor;
+        }
+
+        /**
+         * @return cache keys of the inner jars mapped by their entry names, in the order they appear in the jar
+         */
+        public Map<String, String> getInnerJars() {
+
+            return innerJars;
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+
+            writeNullable(out, fileName);
+            writeNullable(out, name);
+            writeNullable(out, version);
+            out.writeBoolean(validName);
+            out.writeBoolean(hasManifest);
+            out.writeBoolean(bundle);
+            writeNullable(out, bundleName);
+            writeNullable(out, bundleVendor);
+            writeNullable(out, vendor);
+            out.writeInt(innerJars.size());
+            for (Map.Entry<String, String> innerJar : innerJars.entrySet()) {
+                out.writeUTF(innerJar.getKey());
+                out.writeUTF(innerJar.getValue());
+            }
+        }
+
+        private static CachedLibrary read(DataInputStream in) throws IOException {
+
+            CachedLibrary library = new CachedLibrary();
+            library.fileName = readNullable(in);
+            library.name = readNullable(in);
+            library.version = readNullable(in);
+            library.validName = in.readBoolean();
+            library.hasManifest = in.readBoolean();
+            library.bundle = in.readBoolean();
+            library.bundleName = readNullable(in);
+            library.bundleVendor = readNullable(in);
+            library.vendor = readNullable(in);
+            int innerJarCount = in.readInt();
+            for (int i = 0; i < innerJarCount; i++) {
+                library.innerJars.put(in.readUTF(), in.readUTF());
+            }
+            return library;
+        }
+
+        private static void writeNullable(DataOutputStream out, String value) throws IOException {
+
+            out.writeBoolean(value != null);
+            if (value != null) {
+                out.writeUTF(value);
+            }
+        }
+
+        private static String readNullable(DataInputStream in) throws IOException {
+
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+    }
+}
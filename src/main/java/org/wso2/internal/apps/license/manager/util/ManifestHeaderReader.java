@@ -0,0 +1,179 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads selected headers from the main section of a MANIFEST.MF stream. Only the values of the requested headers
+ * are kept, continuation lines are joined, and reading stops as soon as every requested header is complete or the
+ * main section ends. Other headers, such as a large Import-Package, are skipped byte by byte without being stored.
+ */
+public class ManifestHeaderReader {
+
+    private static final int READ_BUFFER_SIZE = 4096;
+    private static final int MAX_NAME_LENGTH = 70;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[READ_BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    private ManifestHeaderReader(InputStream in) {
+
+        this.in = in;
+    }
+
+    /**
+     * Read the given headers from the main section of a manifest. The stream is not closed and may be left
+     * partially read.
+     *
+     * @param in      stream positioned at the start of the manifest
+     * @param headers names of the headers to read, matched case-insensitively as in java.util.jar.Attributes
+     * @return values of the headers which are present, keyed by the requested names
+     * @throws IOException if reading the stream fails
+     */
+    public static Map<String, String> read(InputStream in, String... headers) throws IOException {
+
+        return new ManifestHeaderReader(in).readHeaders(headers);
+    }
+
+    private Map<String, String> readHeaders(String[] headers) throws IOException {
+
+        Map<String, String> values = new HashMap<>();
+        byte[] name = new byte[MAX_NAME_LENGTH + 1];
+        ByteArrayOutputStream value = new ByteArrayOutputStream();
+        String currentHeader = null;
+
+        while (true) {
+            int b = read();
+            if (b == ' ' && currentHeader != null) {
+                // Continuation of the header being read.
+                readLine(value);
+                continue;
+            }
+            if (currentHeader != null) {
+                values.put(currentHeader, new String(value.toByteArray(), StandardCharsets.UTF_8));
+                currentHeader = null;
+                value.reset();
+            }
+            if (b < 0 || b == '\r' || b == '\n' || values.size() == headers.length) {
+                // End of the stream, end of the main section, or every header is read.
+                return values;
+            }
+            if (b == ' ') {
+                // Continuation of a header which is not requested.
+                skipLine();
+                continue;
+            }
+
+            int nameLength = 0;
+            while (b >= 0 && b != ':' && b != '\r' && b != '\n' && nameLength < name.length) {
+                name[nameLength++] = (byte) b;
+                b = read();
+            }
+            String header = (b == ':') ? match(name, nameLength, headers) : null;
+            if (header != null && !values.containsKey(header)) {
+                b = read();
+                if (b != ' ' && b >= 0) {
+                    unread();
+                }
+                currentHeader = header;
+                readLine(value);
+            } else if (b != '\r' && b != '\n') {
+                skipLine();
+            } else {
+                endLine(b);
+            }
+        }
+    }
+
+    private static String match(byte[] name, int nameLength, String[] headers) {
+
+        for (String header : headers) {
+            if (header.length() == nameLength) {
+                int i = 0;
+                while (i < nameLength && Character.toLowerCase((char) name[i]) ==
+                        Character.toLowerCase(header.charAt(i))) {
+                    i++;
+                }
+                if (i == nameLength) {
+                    return header;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void readLine(ByteArrayOutputStream value) throws IOException {
+
+        int b = read();
+        while (b >= 0 && b != '\r' && b != '\n') {
+            value.write(b);
+            b = read();
+        }
+        endLine(b);
+    }
+
+    private void skipLine() throws IOException {
+
+        int b = read();
+        while (b >= 0 && b != '\r' && b != '\n') {
+            b = read();
+        }
+        endLine(b);
+    }
+
+    /**
+     * Consume the '\n' of a "\r\n" line ending.
+     */
+    private void endLine(int b) throws IOException {
+
+        if (b == '\r' && read() != '\n') {
+            unread();
+        }
+    }
+
+    private int read() throws IOException {
+
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private void unread() {
+
+        if (position > 0) {
+            position--;
+        }
+    }
+}
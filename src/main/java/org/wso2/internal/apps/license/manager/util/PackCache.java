@@ -0,0 +1,437 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.internal.apps.license.manager.exception.LicenseManagerConfigurationException;
+import org.wso2.internal.apps.license.manager.exception.LicenseManagerRuntimeException;
+import org.wso2.msf4j.util.SystemVariableUtil;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps downloaded packs on the local disk so that a pack which is scanned again is not downloaded again. A pack
+ * is identified by its path on the FTP server, its size and its modification time, and is kept in a directory of
+ * its own under its original name. The least recently used packs are removed once the cache exceeds its disk
+ * budget, except for the packs pinned by a lease while they are in use. A pack which fails to load is kept in a
+ * partial directory of its own, so that the next attempt resumes the download, until it loads or is evicted.
+ */
+public class PackCache {
+
+    private static final Logger log = LoggerFactory.getLogger(PackCache.class);
+    private static final String PARTIAL_SUFFIX = ".partial";
+    private static PackCache packCache = null;
+
+    private final File cacheDirectory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, CachedPack> packs = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, File> partialDirectories = new LinkedHashMap<>();
+    private final Set<String> loadingKeys = new HashSet<>();
+    private final Map<String, KeyLock> keyLocks = new HashMap<>();
+    private long totalBytes = 0;
+
+    private PackCache(File cacheDirectory, long maxBytes) {
+
+        this.cacheDirectory = cacheDirectory;
+        this.maxBytes = maxBytes;
+        if (isEnabled()) {
+            loadIndex();
+        }
+    }
+
+    public static synchronized PackCache getPackCache() {
+
+        if (packCache == null) {
+            long maxBytes = Long.parseLong(SystemVariableUtil.getValue(Constants.PACK_CACHE_MAX_BYTES,
+                    String.valueOf(Constants.DEFAULT_PACK_CACHE_MAX_BYTES)));
+            packCache = new PackCache(getConfiguredDirectory(), maxBytes);
+        }
+        return packCache;
+    }
+
+    /**
+     * @return directory of the cache as configured, or null if it is not configured
+     */
+    static File getConfiguredDirectory() {
+
+        String cachePath = SystemVariableUtil.getValue(Constants.PACK_CACHE_PATH, null);
+        if (cachePath == null) {
+            String pathToStorage = SystemVariableUtil.getValue(Constants.FILE_DOWNLOAD_PATH, null);
+            cachePath = (pathToStorage == null) ? null : pathToStorage + Constants.PACK_CACHE_DIRECTORY_NAME;
+        }
+        return (cachePath == null) ? null : new File(cachePath);
+    }
+
+    /**
+     * @return false if the cache is switched off, in which case packs are downloaded to the download path
+     */
+    public boolean isEnabled() {
+
+        return cacheDirectory != null && maxBytes > 0;
+    }
+
+    /**
+     * Get a pack from the cache, loading it into the cache first if it is not there. The pack stays pinned in the
+     * cache until the lease is closed. Loading the same pack concurrently is done only once.
+     *
+     * @param remotePath   path of the pack on the FTP server
+     * @param packName     name of the pack
+     * @param size         size of the pack on the FTP server
+     * @param lastModified modification time of the pack on the FTP server
+     * @param loader       loads the pack into the given file if it is not in the cache
+     * @return lease of the pack
+     * @throws LicenseManagerConfigurationException if the loader fails to download the pack
+     * @throws LicenseManagerRuntimeException       if the loader fails otherwise or the pack cannot be cached
+     */
+    public Lease acquire(String remotePath, String packName, long size, long lastModified, Loader loader)
+            throws LicenseManagerConfigurationException, LicenseManagerRuntimeException {
+
+        if (!isEnabled()) {
+            // Without the cache the pack goes to the download path, where it is cleaned up with the product.
+            File target = new File(SystemVariableUtil.getValue(Constants.FILE_DOWNLOAD_PATH, null) + packName);
+            loader.load(target);
+            return new Lease(null, target, false);
+        }
+
+        String key = key(remotePath, size, lastModified);
+        KeyLock keyLock = lockKey(key);
+        try {
+            synchronized (keyLock) {
+                Lease lease = pin(key, size);
+                if (lease != null) {
+                    log.info("Reusing the cached pack " + packName + " of " + size + " bytes");
+                    return lease;
+                }
+
+                // Whatever an earlier attempt left in the partial directory is resumed by the loader.
+                File partialDirectory = new File(cacheDirectory, key + PARTIAL_SUFFIX);
+                File packDirectory = new File(cacheDirectory, key);
+                synchronized (this) {
+                    partialDirectories.remove(key);
+                    partialDirectories.put(key, partialDirectory);
+                    loadingKeys.add(key);
+                }
+                boolean loaded = false;
+                try {
+                    Files.createDirectories(partialDirectory.toPath());
+                    File loadedPack = new File(partialDirectory, packName);
+                    loader.load(loadedPack);
+                    if (!loadedPack.isFile()) {
+                        throw new LicenseManagerRuntimeException("The pack " + packName + " was not downloaded");
+                    }
+                    deleteDirectory(packDirectory);
+                    Files.createDirectories(packDirectory.toPath());
+                    Files.move(loadedPack.toPath(), new File(packDirectory, packName).toPath(),
+                            StandardCopyOption.ATOMIC_MOVE);
+                    loaded = true;
+                } catch (IOException e) {
+                    throw new LicenseManagerRuntimeException("Failed to add the pack " + packName + " to the cache", e);
+                } finally {
+                    synchronized (this) {
+                        loadingKeys.remove(key);
+                        if (loaded) {
+                            partialDirectories.remove(key);
+                        }
+                    }
+                    if (loaded) {
+                        deleteDirectory(partialDirectory);
+                    }
+                }
+
+                CachedPack cachedPack = new CachedPack(key, new File(packDirectory, packName));
+                cachedPack.pins++;
+                synchronized (this) {
+                    packs.put(key, cachedPack);
+                    totalBytes += cachedPack.size;
+                    evict();
+                }
+                return new Lease(cachedPack, cachedPack.file, true);
+            }
+        } finally {
+            unlockKey(key, keyLock);
+        }
+    }
+
+    /**
+     * Get the lock of a key, which is kept only while a thread acquires a pack of the key.
+     */
+    private KeyLock lockKey(String key) {
+
+        synchronized (keyLocks) {
+            KeyLock keyLock = keyLocks.computeIfAbsent(key, k -> new KeyLock());
+            keyLock.users++;
+            return keyLock;
+        }
+    }
+
+    private void unlockKey(String key, KeyLock keyLock) {
+
+        synchronized (keyLocks) {
+            if (--keyLock.users == 0) {
+                keyLocks.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Pin a cached pack if it is there and still intact.
+     */
+    private synchronized Lease pin(String key, long size) {
+
+        CachedPack cachedPack = packs.get(key);
+        if (cachedPack == null) {
+            return null;
+        }
+        if (!cachedPack.file.isFile() || cachedPack.file.length() != size) {
+            log.warn("The cached pack " + cachedPack.file.getAbsolutePath() + " is missing or damaged");
+            remove(cachedPack);
+            return null;
+        }
+        cachedPack.pins++;
+        if (!cachedPack.file.setLastModified(System.currentTimeMillis())) {
+            log.debug("Failed to record the use of " + cachedPack.file.getAbsolutePath());
+        }
+        return new Lease(cachedPack, cachedPack.file, true);
+    }
+
+    private synchronized void unpin(CachedPack cachedPack) {
+
+        cachedPack.pins--;
+        evict();
+    }
+
+    /**
+     * Remove the partial downloads which are not being loaded, oldest first, and then the least recently used packs
+     * which are not pinned until the cache fits its budget.
+     */
+    private void evict() {
+
+        long partialBytes = 0;
+        for (File partialDirectory : partialDirectories.values()) {
+            partialBytes += directorySize(partialDirectory);
+        }
+        Iterator<Map.Entry<String, File>> partialIterator = partialDirectories.entrySet().iterator();
+        while (totalBytes + partialBytes > maxBytes && partialIterator.hasNext()) {
+            Map.Entry<String, File> partial = partialIterator.next();
+            if (!loadingKeys.contains(partial.getKey())) {
+                partialIterator.remove();
+                partialBytes -= directorySize(partial.getValue());
+                deleteDirectory(partial.getValue());
+                log.info("Evicted the partial download " + partial.getValue().getName());
+            }
+        }
+
+        Iterator<CachedPack> iterator = packs.values().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            CachedPack cachedPack = iterator.next();
+            if (cachedPack.pins == 0) {
+                iterator.remove();
+                totalBytes -= cachedPack.size;
+                deleteDirectory(cachedPack.file.getParentFile());
+                log.info("Evicted the cached pack " + cachedPack.file.getName() + " of " + cachedPack.size +
+                        " bytes");
+            }
+        }
+        if (totalBytes > maxBytes) {
+            log.warn("The pack cache holds " + totalBytes + " bytes of packs in use, over its budget of " +
+                    maxBytes + " bytes");
+        }
+    }
+
+    private void remove(CachedPack cachedPack) {
+
+        packs.remove(cachedPack.key);
+        totalBytes -= cachedPack.size;
+        if (cachedPack.pins == 0) {
+            deleteDirectory(cachedPack.file.getParentFile());
+        }
+    }
+
+    /**
+     * Rebuild the index from the cache directory, in the order the packs were last used. The partial downloads are
+     * kept for the next attempt to resume, and anything else which is not a complete pack is removed.
+     */
+    private void loadIndex() {
+
+        File[] directories = cacheDirectory.listFiles(File::isDirectory);
+        if (directories == null) {
+            return;
+        }
+        List<CachedPack> cachedPacks = new ArrayList<>();
+        List<File> partials = new ArrayList<>();
+        for (File directory : directories) {
+            File[] files = directory.listFiles(File::isFile);
+            if (directory.getName().endsWith(PARTIAL_SUFFIX)) {
+                partials.add(directory);
+            } else if (files == null || files.length != 1) {
+                deleteDirectory(directory);
+            } else {
+                cachedPacks.add(new CachedPack(directory.getName(), files[0]));
+            }
+        }
+        cachedPacks.sort(Comparator.comparingLong(cachedPack -> cachedPack.file.lastModified()));
+        partials.sort(Comparator.comparingLong(File::lastModified));
+        synchronized (this) {
+            for (File partial : partials) {
+                String name = partial.getName();
+                partialDirectories.put(name.substring(0, name.length() - PARTIAL_SUFFIX.length()), partial);
+            }
+            for (CachedPack cachedPack : cachedPacks) {
+                packs.put(cachedPack.key, cachedPack);
+                totalBytes += cachedPack.size;
+            }
+            evict();
+        }
+        log.info("The pack cache holds " + packs.size() + " packs of " + totalBytes + " bytes");
+    }
+
+    private static String key(String remotePath, long size, long lastModified) {
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((remotePath + '\0' + size + '\0' + lastModified)
+                    .getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                key.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static long directorySize(File directory) {
+
+        long size = 0;
+        File[] files = directory.listFiles(File::isFile);
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    private static void deleteDirectory(File directory) {
+
+        if (directory.exists()) {
+            ZipHandler.deleteFolder(directory.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Loads a pack which is not in the cache.
+     */
+    public interface Loader {
+
+        /**
+         * @param target file to load the pack into
+         */
+        void load(File target) throws LicenseManagerConfigurationException, LicenseManagerRuntimeException;
+    }
+
+    /**
+     * Serializes the leases and loads of one key, and counts the threads using it.
+     */
+    private static class KeyLock {
+
+        private int users;
+    }
+
+    /**
+     * A pack in the cache along with the number of leases pinning it.
+     */
+    private static class CachedPack {
+
+        private final String key;
+        private final File file;
+        private final long size;
+        private int pins = 0;
+
+        CachedPack(String key, File file) {
+
+            this.key = key;
+            this.file = file;
+            this.size = file.length();
+        }
+    }
+
+    /**
+     * A pack pinned in the cache until the lease is closed.
+     */
+    public class Lease implements Closeable {
+
+        private final CachedPack cachedPack;
+        private final File file;
+        private final boolean cached;
+        private boolean released = false;
+
+        Lease(CachedPack cachedPack, File file, boolean cached) {
+
+            this.cachedPack = cachedPack;
+            this.file = file;
+            this.cached = cached;
+        }
+
+        /**
+         * @return the pack on the local disk
+         */
+        public File getFile() {
+
+            return file;
+        }
+
+        /**
+         * @return true if the pack is kept in the cache, false if it was downloaded to the download path
+         */
+        public boolean isCached() {
+
+            return cached;
+        }
+
+        @Override
+        public void close() {
+
+            if (cachedPack != null && !released) {
+                released = true;
+                unpin(cachedPack);
+            }
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.internal.apps.license.manager.exception.LicenseManagerRuntimeException;
+import org.wso2.internal.apps.license.manager.model.LibraryDetails;
+import org.wso2.internal.apps.license.manager.model.PackDetails;
+import org.wso2.msf4j.util.SystemVariableUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A singleton store of the scan results of packs, keyed by the pack name and the SHA-256 of the pack content. The
+ * results are written to disk in a compact binary form: every library is written once and the lists and parents
+ * refer to libraries by index. Only the latest content of each pack name is kept.
+ */
+public class PackDetailsStore {
+
+    private static final Logger log = LoggerFactory.getLogger(PackDetailsStore.class);
+    private static final int FORMAT_VERSION = 1;
+    private static final String FILE_EXTENSION = ".details";
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static PackDetailsStore packDetailsStore = null;
+
+    private final File storeDirectory;
+
+    private PackDetailsStore(File storeDirectory) {
+
+        this.storeDirectory = storeDirectory;
+    }
+
+    public static synchronized PackDetailsStore getPackDetailsStore() {
+
+        if (packDetailsStore == null) {
+            packDetailsStore = new PackDetailsStore(getConfiguredDirectory());
+        }
+        return packDetailsStore;
+    }
+
+    /**
+     * @return directory of the store as configured, or null if it is not configured
+     */
+    static File getConfiguredDirectory() {
+
+        String storePath = SystemVariableUtil.getValue(Constants.PACK_STORE_PATH, null);
+        if (storePath == null) {
+            String pathToStorage = SystemVariableUtil.getValue(Constants.FILE_DOWNLOAD_PATH, null);
+            storePath = (pathToStorage == null) ? null : pathToStorage + Constants.PACK_STORE_DIRECTORY_NAME;
+        }
+        return (storePath == null) ? null : new File(storePath);
+    }
+
+    /**
+     * Compute the SHA-256 of a pack.
+     *
+     * @param pack zip file of the pack
+     * @return the checksum as a hex string
+     * @throws LicenseManagerRuntimeException if the pack cannot be read
+     */
+    public static String checksum(File pack) throws LicenseManagerRuntimeException {
+
+        try (InputStream in = new FileInputStream(pack)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            int len;
+            while ((len = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, len);
+            }
+            StringBuilder checksum = new StringBuilder();
+            for (byte b : digest.digest()) {
+                checksum.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return checksum.toString();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new LicenseManagerRuntimeException("Failed to compute the checksum of " + pack.getName(), e);
+        }
+    }
+
+    /**
+     * Load the scan results of a pack.
+     *
+     * @param packName name of the pack
+     * @param checksum SHA-256 of the pack content
+     * @return new pack details read from the store, or null if the pack with this content was not stored
+     */
+    public PackDetails load(String packName, String checksum) {
+
+        File file = getFile(packName, checksum);
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(
+                new FileInputStream(file))))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            PackDetails packDetails = new PackDetails();
+            packDetails.setPackName(readNullable(in));
+            packDetails.setPackVersion(readNullable(in));
+
+            int libraryCount = in.readInt();
+            List<LibraryDetails> libraries = new ArrayList<>(libraryCount);
+            for (int i = 0; i < libraryCount; i++) {
+                LibraryDetails library = new LibraryDetails();
+                library.setName(readNullable(in));
+                library.setType(readNullable(in));
+                library.setVersion(readNullable(in));
+                library.setVendor(readNullable(in));
+                library.setFileName(readNullable(in));
+                library.setArchivePath(readNullable(in));
+                library.setChecksum(readNullable(in));
+                library.setisBundle(in.readBoolean());
+                library.setValidName(in.readBoolean());
+                // Parents are always written before their children.
+                int parent = in.readInt();
+                library.setParent(parent < 0 ? null : libraries.get(parent));
+                libraries.add(library);
+            }
+            packDetails.setLibFilesInPack(readList(in, libraries));
+            packDetails.setFaultyNamedLibs(readList(in, libraries));
+            packDetails.setUniqueFaultyNamedLibs(readList(in, libraries));
+            return packDetails;
+        } catch (IOException | IndexOutOfBoundsException e) {
+            log.error("Failed to read the stored details of " + packName + ". " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Store the scan results of a pack, replacing the results stored for earlier content of the same pack. This
+     * must be called before the pack details are changed by the later steps.
+     *
+     * @param packName    name of the pack
+     * @param checksum    SHA-256 of the pack content
+     * @param packDetails scan results of the pack
+     */
+    public synchronized void save(String packName, String checksum, PackDetails packDetails) {
+
+        File file = getFile(packName, checksum);
+        if (file == null || (!storeDirectory.isDirectory() && !storeDirectory.mkdirs())) {
+            return;
+        }
+
+        Map<LibraryDetails, Integer> indexes = new IdentityHashMap<>();
+        List<LibraryDetails> libraries = new ArrayList<>();
+        addLibraries(packDetails.getLibFilesInPack(), indexes, libraries);
+        addLibraries(packDetails.getFaultyNamedLibs(), indexes, libraries);
+        addLibraries(packDetails.getUniqueFaultyNamedLibs(), indexes, libraries);
+
+        File tempFile = new File(file.getAbsolutePath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(
+                new FileOutputStream(tempFile))))) {
+            out.writeInt(FORMAT_VERSION);
+            writeNullable(out, packDetails.getPackName());
+            writeNullable(out, packDetails.getPackVersion());
+
+            out.writeInt(libraries.size());
+            for (LibraryDetails library : libraries) {
+                writeNullable(out, library.getName());
+                writeNullable(out, library.getType());
+                writeNullable(out, library.getVersion());
+                writeNullable(out, library.getVendor());
+                writeNullable(out, library.getFileName());
+                writeNullable(out, library.getArchivePath());
+                writeNullable(out, library.getChecksum());
+                out.writeBoolean(library.isBundle());
+                out.writeBoolean(library.isValidName());
+                out.writeInt(library.getParent() == null ? -1 : indexes.get(library.getParent()));
+            }
+            writeList(out, packDetails.getLibFilesInPack(), indexes);
+            writeList(out, packDetails.getFaultyNamedLibs(), indexes);
+            writeList(out, packDetails.getUniqueFaultyNamedLibs(), indexes);
+        } catch (IOException e) {
+            log.error("Failed to store the details of " + packName + ". " + e.getMessage(), e);
+            tempFile.delete();
+            return;
+        }
+
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.error("Failed to store the details of " + packName + ". " + e.getMessage(), e);
+            return;
+        }
+        removeOlderContent(packName, file);
+    }
+
+    private File getFile(String packName, String checksum) {
+
+        if (storeDirectory == null || packName.contains("/") || packName.contains("\\")) {
+            return null;
+        }
+        return new File(storeDirectory, packName + "." + checksum + FILE_EXTENSION);
+    }
+
+    private void removeOlderContent(String packName, File latest) {
+
+        // The checksum is 64 hex characters between the pack name and the extension.
+        int nameLength = packName.length() + 1 + 64 + FILE_EXTENSION.length();
+        File[] files = storeDirectory.listFiles(file -> file.getName().startsWith(packName + ".") &&
+                file.getName().endsWith(FILE_EXTENSION) && file.getName().length() == nameLength &&
+                !file.equals(latest));
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    log.warn("Failed to delete the stored details " + file.getAbsolutePath());
+                }
+            }
+        }
+    }
+
+    /**
+     * Index the libraries, parents first.
+     */
+    private static void addLibraries(List<LibraryDetails> list, Map<LibraryDetails, Integer> indexes,
+                                     List<LibraryDetails> libraries) {
+
+        if (list == null) {
+            return;
+        }
+        for (LibraryDetails library : list) {
+            addLibrary(library, indexes, libraries);
+        }
+    }
+
+    private static void addLibrary(LibraryDetails library, Map<LibraryDetails, Integer> indexes,
+                                   List<LibraryDetails> libraries) {
+
+        if (library == null || indexes.containsKey(library)) {
+            return;
+        }
+        addLibrary(library.getParent(), indexes, libraries);
+        indexes.put(library, libraries.size());
+        libraries.add(library);
+    }
+
+    private static void writeList(DataOutputStream out, List<LibraryDetails> list,
+                                  Map<LibraryDetails, Integer> indexes) throws IOException {
+
+        if (list == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(list.size());
+        for (LibraryDetails library : list) {
+            out.writeInt(indexes.get(library));
+        }
+    }
+
+    private static List<LibraryDetails> readList(DataInputStream in, List<LibraryDetails> libraries)
+            throws IOException {
+
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        List<LibraryDetails> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(libraries.get(in.readInt()));
+        }
+        return list;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
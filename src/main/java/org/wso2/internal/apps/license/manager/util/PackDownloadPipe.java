@@ -0,0 +1,292 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.internal.apps.license.manager.model.PipelineStatistics;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads a pack from a stream into a file on a background thread, while handing the same bytes to a reader
+ * through a bounded queue of chunks. The reader can detach at any time, in which case the download carries on into
+ * the file only. The SHA-256 of the pack is computed on the way.
+ */
+public class PackDownloadPipe implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(PackDownloadPipe.class);
+    private static final int CHUNK_SIZE = 256 * 1024;
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+    private static final long CLOSE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    private final InputStream source;
+    private final File target;
+    private final PipelineStatistics statistics;
+    private final BlockingQueue<byte[]> chunks;
+    private final Thread downloadThread;
+    private volatile boolean detached = false;
+    private volatile boolean cancelled = false;
+    private volatile IOException failure;
+    private volatile String checksum;
+
+    /**
+     * @param source     stream of the pack from the FTP server
+     * @param target     file to download the pack into
+     * @param maxChunks  maximum number of chunks buffered ahead of the reader
+     * @param statistics statistics of the pipeline
+     */
+    public PackDownloadPipe(InputStream source, File target, int maxChunks, PipelineStatistics statistics) {
+
+        this.source = source;
+        this.target = target;
+        this.statistics = statistics;
+        this.chunks = new ArrayBlockingQueue<>(maxChunks);
+        this.downloadThread = new Thread(this::download, "pack-download-" + target.getName());
+    }
+
+    /**
+     * Start downloading on the background thread.
+     */
+    public void start() {
+
+        downloadThread.start();
+    }
+
+    private void download() {
+
+        try (OutputStream out = new FileOutputStream(target)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int len;
+            while (!cancelled && (len = readChunk(buffer)) > 0) {
+                out.write(buffer, 0, len);
+                digest.update(buffer, 0, len);
+                statistics.getDownloadedBytes().addAndGet(len);
+                offer(Arrays.copyOf(buffer, len));
+            }
+            if (!cancelled) {
+                checksum = toHex(digest.digest());
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (NoSuchAlgorithmException e) {
+            failure = new IOException("SHA-256 is not available", e);
+        } catch (InterruptedException e) {
+            failure = new InterruptedIOException("Download of " + target.getName() + " was interrupted");
+        } finally {
+            endOfStream();
+        }
+    }
+
+    /**
+     * Wake up the reader. A detached reader no longer reads the queue, so the queue is cleared to make room.
+     */
+    private void endOfStream() {
+
+        while (true) {
+            if (detached) {
+                chunks.clear();
+            }
+            try {
+                if (chunks.offer(END_OF_STREAM, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                // Interrupted by close, which detaches the reader first.
+            }
+        }
+    }
+
+    private int readChunk(byte[] buffer) throws IOException {
+
+        int count = 0;
+        int len;
+        while (count < buffer.length && (len = source.read(buffer, count, buffer.length - count)) >= 0) {
+            count += len;
+        }
+        return count;
+    }
+
+    private void offer(byte[] chunk) throws InterruptedException {
+
+        // Wait for the reader while it is attached, but never block the download once it has detached.
+        while (!detached && !cancelled) {
+            if (chunks.offer(chunk, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                statistics.getDownloadQueueDepth().incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return stream of the pack as it is downloaded, to be read by a single reader
+     */
+    public InputStream getStream() {
+
+        return new InputStream() {
+
+            private byte[] chunk = new byte[0];
+            private int position = 0;
+            private boolean ended = false;
+
+            @Override
+            public int read() throws IOException {
+
+                byte[] single = new byte[1];
+                return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+
+                if (length == 0) {
+                    return 0;
+                }
+                while (position == chunk.length) {
+                    if (ended || detached) {
+                        return -1;
+                    }
+                    try {
+                        chunk = chunks.take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Reading the pack was interrupted");
+                    }
+                    position = 0;
+                    if (chunk == END_OF_STREAM) {
+                        ended = true;
+                        if (failure != null) {
+                            throw new IOException("Failed to download " + target.getName(), failure);
+                        }
+                    } else {
+                        statistics.getDownloadQueueDepth().decrementAndGet();
+                    }
+                }
+                int count = Math.min(length, chunk.length - position);
+                System.arraycopy(chunk, position, buffer, offset, count);
+                position += count;
+                return count;
+            }
+        };
+    }
+
+    /**
+     * @return the reason the download failed, or null if it has not failed
+     */
+    public IOException getFailure() {
+
+        return failure;
+    }
+
+    /**
+     * Stop handing the bytes to the reader. The download carries on into the file.
+     */
+    public void detach() {
+
+        detached = true;
+        chunks.clear();
+        statistics.getDownloadQueueDepth().set(0);
+    }
+
+    /**
+     * Wait for the download to complete.
+     *
+     * @return SHA-256 of the pack
+     * @throws IOException if the download failed
+     */
+    public String awaitChecksum() throws IOException {
+
+        try {
+            downloadThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Waiting for the download of " + target.getName() + " was interrupted");
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return checksum;
+    }
+
+    /**
+     * Cancel the download if it is still running. A download which did not complete leaves no file behind, once the
+     * download thread has stopped writing to it.
+     */
+    @Override
+    public void close() {
+
+        cancelled = true;
+        detach();
+        downloadThread.interrupt();
+        boolean interrupted = false;
+        try {
+            downloadThread.join(CLOSE_TIMEOUT_MILLIS);
+            if (downloadThread.isAlive()) {
+                // The thread is blocked on a read which ignores the interrupt, so close the stream under it.
+                closeSource();
+                downloadThread.join(CLOSE_TIMEOUT_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        if (downloadThread.isAlive()) {
+            log.warn("The download of " + target.getName() + " did not stop, leaving " + target.getAbsolutePath() +
+                    " behind");
+        } else if (checksum == null && target.exists() && !target.delete()) {
+            log.warn("Failed to delete the incomplete download " + target.getAbsolutePath());
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void closeSource() {
+
+        try {
+            source.close();
+        } catch (IOException e) {
+            log.warn("Failed to close the stream of " + target.getName() + ". " + e.getMessage());
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.internal.apps.license.manager.connector.PackSourceFactory;
+import org.wso2.internal.apps.license.manager.exception.LicenseManagerConfigurationException;
+import org.wso2.internal.apps.license.manager.model.UploadedPack;
+import org.wso2.msf4j.util.SystemVariableUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a snapshot of the packs uploaded to the pack source, so that the listing is served without a round trip to
+ * the source. The snapshot is refreshed in the background and on demand, and carries an entity tag which changes
+ * only when a pack is added, removed or modified.
+ */
+public class PackListingCache {
+
+    private static final Logger log = LoggerFactory.getLogger(PackListingCache.class);
+    private static PackListingCache packListingCache = null;
+
+    private volatile Snapshot snapshot;
+
+    private PackListingCache(long pollSeconds) {
+
+        if (pollSeconds > 0) {
+            ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "pack-listing-poller");
+                thread.setDaemon(true);
+                return thread;
+            });
+            poller.scheduleWithFixedDelay(this::poll, 0, pollSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    public static synchronized PackListingCache getPackListingCache() {
+
+        if (packListingCache == null) {
+            packListingCache = new PackListingCache(Long.parseLong(SystemVariableUtil.getValue(
+                    Constants.PACK_LISTING_POLL_SECONDS, String.valueOf(Constants.DEFAULT_PACK_LISTING_POLL_SECONDS))));
+        }
+        return packListingCache;
+    }
+
+    /**
+     * Get the latest snapshot of the listing. The server is listed only if no snapshot has been taken yet.
+     *
+     * @return snapshot of the listing
+     * @throws LicenseManagerConfigurationException if the server has to be listed and the listing fails
+     */
+    public Snapshot getSnapshot() throws LicenseManagerConfigurationException {
+
+        Snapshot currentSnapshot = snapshot;
+        return (currentSnapshot != null) ? currentSnapshot : refresh();
+    }
+
+    /**
+     * List the server and replace the snapshot. The snapshot object, and so its entity tag, is kept as it is if
+     * nothing has changed.
+     *
+     * @return the latest snapshot of the listing
+     * @throws LicenseManagerConfigurationException if the listing fails
+     */
+    public synchronized Snapshot refresh() throws LicenseManagerConfigurationException {
+
+        List<UploadedPack> packs = new ArrayList<>(PackSourceFactory.getPackSource().listPacks());
+        packs.sort(Comparator.comparing(UploadedPack::getName));
+        String eTag = computeETag(packs);
+        if (snapshot == null || !snapshot.getETag().equals(eTag)) {
+            if (snapshot != null && log.isDebugEnabled()) {
+                log.debug("The listing of the uploaded packs has changed, " + packs.size() + " packs are listed");
+            }
+            snapshot = new Snapshot(Collections.unmodifiableList(packs), eTag, System.currentTimeMillis());
+        }
+        return snapshot;
+    }
+
+    private void poll() {
+
+        try {
+            refresh();
+        } catch (LicenseManagerConfigurationException | RuntimeException e) {
+            // Keep serving the last snapshot until the server can be listed again.
+            log.warn("Failed to refresh the listing of the uploaded packs. " + e.getMessage());
+        }
+    }
+
+    private static String computeETag(List<UploadedPack> packs) {
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (UploadedPack pack : packs) {
+                digest.update((pack.getName() + '\0' + pack.getSize() + '\0' + pack.getLastModified() + '\n')
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+            StringBuilder eTag = new StringBuilder("\"");
+            byte[] hash = digest.digest();
+            for (int i = 0; i < 16; i++) {
+                eTag.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+            }
+            return eTag.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * An immutable listing of the uploaded packs, sorted by name.
+     */
+    public static class Snapshot {
+
+        private final List<UploadedPack> packs;
+        private final String eTag;
+        private final long changedAt;
+
+        Snapshot(List<UploadedPack> packs, String eTag, long changedAt) {
+
+            this.packs = packs;
+            this.eTag = eTag;
+            this.changedAt = changedAt;
+        }
+
+        public List<UploadedPack> getPacks() {
+
+            return packs;
+        }
+
+        /**
+         * @return strong entity tag of the listing, quoted
+         */
+        public String getETag() {
+
+            return eTag;
+        }
+
+        /**
+         * @return time the listing was last seen to change, in milliseconds since the epoch
+         */
+        public long getChangedAt() {
+
+            return changedAt;
+        }
+
+        /**
+         * Tell whether the value of an If-None-Match header matches the listing.
+         *
+         * @param ifNoneMatch value of the header, may be null
+         * @return true if the client already has the listing
+         */
+        public boolean matches(String ifNoneMatch) {
+
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(eTag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.internal.apps.license.manager.connector.PackSourceFactory;
+import org.wso2.internal.apps.license.manager.exception.LicenseManagerConfigurationException;
+import org.wso2.internal.apps.license.manager.exception.LicenseManagerRuntimeException;
+import org.wso2.internal.apps.license.manager.model.LibraryDetails;
+import org.wso2.internal.apps.license.manager.model.PackDetails;
+import org.wso2.internal.apps.license.manager.model.TaskProgress;
+import org.wso2.internal.apps.license.manager.model.UploadedPack;
+import org.wso2.msf4j.util.SystemVariableUtil;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scans newly uploaded packs in the background, before anyone asks for them, and parks the results in memory so
+ * that extracting a pre-scanned pack completes at once. The watcher is opt-in. It follows the listing of the
+ * uploaded packs, runs at most a configured number of scans at a time on low priority threads, and holds a scan
+ * back from starting while a task started by a user is running, for at most a configured time. A scan which a user
+ * asks for while it is held back starts at once, and any scan is handed to the user when it completes.
+ */
+public class PackPrescanner {
+
+    private static final Logger log = LoggerFactory.getLogger(PackPrescanner.class);
+    private static final long YIELD_CHECK_MILLIS = 500;
+    private static PackPrescanner packPrescanner = null;
+
+    private final boolean enabled;
+    private final int maxConcurrent;
+    private final int maxParked;
+    private final long pollSeconds;
+    private final long maxYieldMillis;
+    private final Map<String, Prescan> prescans = new LinkedHashMap<>();
+    private final Set<String> seenPacks = new HashSet<>();
+    private boolean baselineTaken;
+    private int runningPrescans;
+    private Scanner scanner;
+    private ExecutorService executorService;
+
+    private PackPrescanner(boolean enabled, int maxConcurrent, int maxParked, long pollSeconds,
+                           long maxYieldSeconds) {
+
+        this.enabled = enabled;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxParked = Math.max(1, maxParked);
+        this.pollSeconds = Math.max(1, pollSeconds);
+        this.maxYieldMillis = TimeUnit.SECONDS.toMillis(Math.max(0, maxYieldSeconds));
+    }
+
+    public static synchronized PackPrescanner getPackPrescanner() {
+
+        if (packPrescanner == null) {
+            packPrescanner = new PackPrescanner(
+                    Boolean.parseBoolean(SystemVariableUtil.getValue(Constants.PRESCAN_ENABLED, "false")),
+                    Integer.parseInt(SystemVariableUtil.getValue(Constants.PRESCAN_MAX_CONCURRENT,
+                            String.valueOf(Constants.DEFAULT_PRESCAN_MAX_CONCURRENT))),
+                    Integer.parseInt(SystemVariableUtil.getValue(Constants.PRESCAN_MAX_PARKED,
+                            String.valueOf(Constants.DEFAULT_PRESCAN_MAX_PARKED))),
+                    Long.parseLong(SystemVariableUtil.getValue(Constants.PRESCAN_POLL_SECONDS,
+                            String.valueOf(Constants.DEFAULT_PRESCAN_POLL_SECONDS))),
+                    Long.parseLong(SystemVariableUtil.getValue(Constants.PRESCAN_MAX_YIELD_SECONDS,
+                            String.valueOf(Constants.DEFAULT_PRESCAN_MAX_YIELD_SECONDS))));
+        }
+        return packPrescanner;
+    }
+
+    public boolean isEnabled() {
+
+        return enabled;
+    }
+
+    /**
+     * Start watching for new packs, if the watcher is enabled. The packs listed when the watcher starts are taken
+     * as already known and are not scanned.
+     *
+     * @param scanner scans a pack the same way as a task started by a user
+     */
+    public synchronized void start(Scanner scanner) {
+
+        if (!enabled || this.scanner != null) {
+            return;
+        }
+        this.scanner = scanner;
+        AtomicInteger threadCount = new AtomicInteger();
+        executorService = Executors.newFixedThreadPool(maxConcurrent, runnable -> {
+            Thread thread = new Thread(runnable, "pack-prescanner-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pack-prescan-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(this::poll, 0, pollSeconds, TimeUnit.SECONDS);
+        log.info("Pre-scanning new packs with at most " + maxConcurrent + " scan(s) at a time");
+    }
+
+    /**
+     * Take the pre-scanned details of a pack. The details are handed out once and only if they were scanned from
+     * the current content of the pack.
+     *
+     * @param packName name of the pack
+     * @param wait     whether to wait for a pre-scan of the pack which is still running
+     * @return details of the pack, or null if the pack has not been pre-scanned
+     * @throws LicenseManagerConfigurationException if the pack cannot be looked up on the pack source
+     */
+    public PackDetails take(String packName, boolean wait) throws LicenseManagerConfigurationException {
+
+        if (!enabled) {
+            return null;
+        }
+        synchronized (this) {
+            Prescan prescan = prescans.get(packName);
+            if (prescan == null || (!wait && !prescan.result.isDone())) {
+                return null;
+            }
+        }
+
+        // Make sure the pack has not been replaced since it was scanned.
+        UploadedPack currentPack = PackSourceFactory.getPackSource().getPack(packName);
+        Prescan prescan;
+        synchronized (this) {
+            prescan = prescans.get(packName);
+            if (prescan == null || !getKey(prescan.pack).equals(getKey(currentPack))) {
+                return null;
+            }
+            prescans.remove(packName);
+            prescan.claimed = true;
+        }
+        try {
+            PackDetails packDetails = prescan.result.get();
+            // The scratch files of the pre-scan now belong to the task of the user.
+            StorageJanitor.getStorageJanitor().transfer(prescan.storageKey, packName);
+            log.info("Using the pre-scanned details of " + packName);
+            return packDetails;
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private void poll() {
+
+        try {
+            List<UploadedPack> packs = new ArrayList<>(PackListingCache.getPackListingCache().getSnapshot().getPacks());
+            // Scan the most recently uploaded packs first.
+            packs.sort(Comparator.comparingLong(UploadedPack::getLastModified).reversed());
+            startPrescans(packs);
+        } catch (LicenseManagerConfigurationException | RuntimeException e) {
+            log.warn("Failed to look for new packs to pre-scan. " + e.getMessage());
+        }
+    }
+
+    private synchronized void startPrescans(List<UploadedPack> packs) {
+
+        Set<String> listedPacks = new HashSet<>();
+        for (UploadedPack pack : packs) {
+            listedPacks.add(getKey(pack));
+        }
+        // Forget the packs which are no longer listed, so that a pack uploaded again is scanned again.
+        seenPacks.retainAll(listedPacks);
+        Iterator<Prescan> iterator = prescans.values().iterator();
+        while (iterator.hasNext()) {
+            Prescan prescan = iterator.next();
+            if (prescan.result.isDone() && !listedPacks.contains(getKey(prescan.pack))) {
+                iterator.remove();
+                StorageJanitor.getStorageJanitor().release(prescan.storageKey);
+            }
+        }
+
+        for (UploadedPack pack : packs) {
+            if (!pack.getName().endsWith(".zip") || !seenPacks.add(getKey(pack)) || !baselineTaken) {
+                continue;
+            }
+            if (runningPrescans >= maxConcurrent) {
+                // Try again on the next poll.
+                seenPacks.remove(getKey(pack));
+                continue;
+            }
+            if (TaskHandler.checkForAlreadyRunningTask(pack.getName())) {
+                // A user is already working on the pack.
+                continue;
+            }
+            Prescan prescan = new Prescan(pack);
+            prescans.put(pack.getName(), prescan);
+            runningPrescans++;
+            executorService.execute(() -> runPrescan(prescan));
+        }
+        baselineTaken = true;
+    }
+
+    private void runPrescan(Prescan prescan) {
+
+        String packName = prescan.pack.getName();
+        try {
+            yieldToUserTasks(prescan);
+            log.info("Pre-scanning " + packName);
+            PackDetails packDetails = scanner.scan(new PrescanProgress(prescan), packName);
+            prescan.result.complete(packDetails);
+            synchronized (this) {
+                // A pre-scan replaced by a scan of newer content is never handed out.
+                if (!prescan.claimed && prescans.get(packName) != prescan) {
+                    StorageJanitor.getStorageJanitor().release(prescan.storageKey);
+                }
+            }
+            log.info("Pre-scanned " + packName);
+        } catch (LicenseManagerConfigurationException | LicenseManagerRuntimeException | RuntimeException e) {
+            prescan.result.completeExceptionally(e);
+            synchronized (this) {
+                prescans.remove(packName, prescan);
+            }
+            StorageJanitor.getStorageJanitor().release(prescan.storageKey);
+            log.warn("Failed to pre-scan " + packName + ". " + e.getMessage());
+        } finally {
+            synchronized (this) {
+                runningPrescans--;
+                removeExcessParked();
+            }
+        }
+    }
+
+    /**
+     * Drop the oldest parked details beyond the limit, along with the scratch files of their scans.
+     */
+    private void removeExcessParked() {
+
+        int parked = 0;
+        for (Prescan prescan : prescans.values()) {
+            if (prescan.result.isDone()) {
+                parked++;
+            }
+        }
+        Iterator<Prescan> iterator = prescans.values().iterator();
+        while (parked > maxParked && iterator.hasNext()) {
+            Prescan prescan = iterator.next();
+            if (prescan.result.isDone()) {
+                iterator.remove();
+                StorageJanitor.getStorageJanitor().release(prescan.storageKey);
+                parked--;
+            }
+        }
+    }
+
+    /**
+     * Hold the pre-scan back while a task started by a user is running, unless a user is waiting for this scan. The
+     * wait is bounded, so a task which is never completed does not hold the pre-scans back for good.
+     */
+    private void yieldToUserTasks(Prescan prescan) {
+
+        long deadline = System.currentTimeMillis() + maxYieldMillis;
+        while (!prescan.claimed && TaskHandler.hasRunningTasks()) {
+            if (System.currentTimeMillis() >= deadline) {
+                log.info("Pre-scanning " + prescan.pack.getName() + " after waiting " +
+                        TimeUnit.MILLISECONDS.toSeconds(maxYieldMillis) + " seconds for the running tasks.");
+                return;
+            }
+            try {
+                Thread.sleep(YIELD_CHECK_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static String getKey(UploadedPack pack) {
+
+        return pack.getName() + '\0' + pack.getSize() + '\0' + pack.getLastModified();
+    }
+
+    /**
+     * Scans a pack for the pre-scanner.
+     */
+    public interface Scanner {
+
+        PackDetails scan(TaskProgress taskProgress, String packName)
+                throws LicenseManagerConfigurationException, LicenseManagerRuntimeException;
+    }
+
+    /**
+     * A pre-scan of a particular content of a pack. The scratch files of the scan are tracked under a key of its
+     * own until a user claims the result.
+     */
+    private static class Prescan {
+
+        private final UploadedPack pack;
+        private final String storageKey;
+        private final CompletableFuture<PackDetails> result = new CompletableFuture<>();
+        private volatile boolean claimed;
+
+        Prescan(UploadedPack pack) {
+
+            this.pack = pack;
+            this.storageKey = "prescan:" + getKey(pack);
+        }
+    }
+
+    /**
+     * Progress of a pre-scan, which is not tracked as a task. The libraries are published to the task which claims
+     * the result, not while the pack is scanned.
+     */
+    private static class PrescanProgress extends TaskProgress {
+
+        private final Prescan prescan;
+
+        PrescanProgress(Prescan prescan) {
+
+            super(null, null, Constants.RUNNING, prescan.pack.getName());
+            this.prescan = prescan;
+        }
+
+        @Override
+        public String getStorageKey() {
+
+            return prescan.storageKey;
+        }
+
+        @Override
+        public void publishLibrary(LibraryDetails library) {
+
+            // Called on the threads of the scan, which must not be held up.
+        }
+    }
+}
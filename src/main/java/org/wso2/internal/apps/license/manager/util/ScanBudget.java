@@ -0,0 +1,238 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.util;
+
+import org.wso2.internal.apps.license.manager.exception.ScanBudgetExceededException;
+import org.wso2.msf4j.util.SystemVariableUtil;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resource budgets of a single scan task: the nesting depth of archives, the uncompressed bytes read out of
+ * archives, the number of archive entries and the wall time. The budgets are checked while the content is streamed,
+ * so a pathological pack is stopped before it fills the disk. A limit of zero or less disables the budget.
+ * The first breach is kept so that it can be reported even if it surfaces as an IOException of a stream.
+ */
+public class ScanBudget {
+
+    private final int maxDepth;
+    private final long maxBytes;
+    private final long maxEntries;
+    private final long maxNanos;
+    private final long startTime = System.nanoTime();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong entries = new AtomicLong();
+    private volatile ScanBudgetExceededException breach;
+
+    /**
+     * @param maxDepth       maximum nesting depth of archives, the direct jars of a pack are at depth 1
+     * @param maxBytes       maximum number of uncompressed bytes read out of archives
+     * @param maxEntries     maximum number of archive entries
+     * @param maxTimeSeconds maximum wall time in seconds
+     */
+    public ScanBudget(int maxDepth, long maxBytes, long maxEntries, long maxTimeSeconds) {
+
+        this.maxDepth = maxDepth;
+        this.maxBytes = maxBytes;
+        this.maxEntries = maxEntries;
+        this.maxNanos = TimeUnit.SECONDS.toNanos(Math.max(0, maxTimeSeconds));
+    }
+
+    /**
+     * @return a budget with the limits configured in the environment, starting now
+     */
+    public static ScanBudget fromEnvironment() {
+
+        return new ScanBudget(
+                Integer.parseInt(SystemVariableUtil.getValue(Constants.SCAN_MAX_DEPTH,
+                        String.valueOf(Constants.DEFAULT_SCAN_MAX_DEPTH))),
+                Long.parseLong(SystemVariableUtil.getValue(Constants.SCAN_MAX_BYTES,
+                        String.valueOf(Constants.DEFAULT_SCAN_MAX_BYTES))),
+                Long.parseLong(SystemVariableUtil.getValue(Constants.SCAN_MAX_ENTRIES,
+                        String.valueOf(Constants.DEFAULT_SCAN_MAX_ENTRIES))),
+                Long.parseLong(SystemVariableUtil.getValue(Constants.SCAN_MAX_SECONDS,
+                        String.valueOf(Constants.DEFAULT_SCAN_MAX_SECONDS))));
+    }
+
+    /**
+     * @return a budget without any limit
+     */
+    public static ScanBudget unlimited() {
+
+        return new ScanBudget(0, 0, 0, 0);
+    }
+
+    /**
+     * Check the nesting depth of an archive.
+     *
+     * @param depth       nesting depth of the archive
+     * @param archivePath path of the archive within the pack
+     * @throws ScanBudgetExceededException if the depth exceeds the limit
+     */
+    public void checkDepth(int depth, String archivePath) throws ScanBudgetExceededException {
+
+        if (maxDepth > 0 && depth > maxDepth) {
+            throw exceeded("Archive " + archivePath + " is nested " + depth + " levels deep, beyond the limit of " +
+                    maxDepth + " levels");
+        }
+        checkTime();
+    }
+
+    /**
+     * Account for archive entries.
+     *
+     * @param count number of entries
+     * @throws ScanBudgetExceededException if the total number of entries exceeds the limit
+     */
+    public void addEntries(long count) throws ScanBudgetExceededException {
+
+        long total = entries.addAndGet(count);
+        if (maxEntries > 0 && total > maxEntries) {
+            throw exceeded("The pack has more than " + maxEntries + " archive entries");
+        }
+        checkTime();
+    }
+
+    /**
+     * Account for uncompressed bytes read out of an archive.
+     *
+     * @param count number of bytes
+     * @throws ScanBudgetExceededException if the total number of bytes exceeds the limit
+     */
+    public void addBytes(long count) throws ScanBudgetExceededException {
+
+        long total = bytes.addAndGet(count);
+        if (maxBytes > 0 && total > maxBytes) {
+            throw exceeded("The pack expands to more than " + maxBytes + " uncompressed bytes");
+        }
+        checkTime();
+    }
+
+    /**
+     * Check the uncompressed bytes which are about to be read, before reading them.
+     *
+     * @param plannedBytes number of bytes about to be read
+     * @throws ScanBudgetExceededException if the bytes would exceed the limit
+     */
+    public void checkPlannedBytes(long plannedBytes) throws ScanBudgetExceededException {
+
+        if (maxBytes > 0 && bytes.get() + plannedBytes > maxBytes) {
+            throw exceeded("The pack expands to " + (bytes.get() + plannedBytes) + " uncompressed bytes, beyond " +
+                    "the limit of " + maxBytes + " bytes");
+        }
+        checkTime();
+    }
+
+    /**
+     * @throws ScanBudgetExceededException if the wall time of the task exceeds the limit
+     */
+    public void checkTime() throws ScanBudgetExceededException {
+
+        if (breach != null) {
+            throw breach;
+        }
+        if (maxNanos > 0 && System.nanoTime() - startTime > maxNanos) {
+            throw exceeded("The scan took longer than " + TimeUnit.NANOSECONDS.toSeconds(maxNanos) + " seconds");
+        }
+    }
+
+    /**
+     * Wrap a stream of uncompressed archive content so that every byte read is accounted for. A breach is thrown
+     * as an IOException caused by the ScanBudgetExceededException, see {@link #getBreach()}.
+     *
+     * @param in stream of uncompressed content
+     * @return the accounted stream
+     */
+    public InputStream track(InputStream in) {
+
+        return new FilterInputStream(in) {
+
+            @Override
+            public int read() throws IOException {
+
+                int b = super.read();
+                if (b >= 0) {
+                    account(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+
+                int count = super.read(buffer, offset, length);
+                if (count > 0) {
+                    account(count);
+                }
+                return count;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+
+                long count = super.skip(n);
+                if (count > 0) {
+                    account(count);
+                }
+                return count;
+            }
+
+            private void account(long count) throws IOException {
+
+                try {
+                    addBytes(count);
+                } catch (ScanBudgetExceededException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the first breach of the budget, or null if the budget was not exceeded
+     */
+    public ScanBudgetExceededException getBreach() {
+
+        return breach;
+    }
+
+    public long getBytes() {
+
+        return bytes.get();
+    }
+
+    public long getEntries() {
+
+        return entries.get();
+    }
+
+    private synchronized ScanBudgetExceededException exceeded(String message) {
+
+        if (breach == null) {
+            breach = new ScanBudgetExceededException("Scan budget exceeded: " + message + ".");
+        }
+        return breach;
+    }
+}
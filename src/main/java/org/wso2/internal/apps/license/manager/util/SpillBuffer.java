@@ -0,0 +1,222 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.msf4j.util.SystemVariableUtil;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Holds the content of an archive read from a parent archive stream. Content is kept in memory up to a threshold
+ * and spilled to a temporary file beyond it, which is removed when the buffer is closed. The memory held by all
+ * open buffers is limited as well; once the limit is reached, content is spilled regardless of the threshold.
+ */
+public class SpillBuffer implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SpillBuffer.class);
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final long MEMORY_LIMIT = Long.parseLong(SystemVariableUtil.getValue(
+            Constants.SCAN_MEMORY_LIMIT, String.valueOf(Constants.DEFAULT_SCAN_MEMORY_LIMIT)));
+    private static final AtomicLong heldBytes = new AtomicLong();
+
+    private byte[] bytes;
+    private long reservedBytes;
+    private int length;
+    private File file;
+    private boolean ownsFile;
+    private long crc = -1;
+
+    private SpillBuffer() {
+
+    }
+
+    /**
+     * Wrap an archive which already exists on disk. The file is not removed when the buffer is closed.
+     *
+     * @param file archive on disk
+     * @return buffer backed by the given file
+     */
+    public static SpillBuffer ofFile(File file) {
+
+        SpillBuffer buffer = new SpillBuffer();
+        buffer.file = file;
+        buffer.ownsFile = false;
+        return buffer;
+    }
+
+    /**
+     * Read the given stream fully. The stream is not closed.
+     *
+     * @param in             stream positioned at the start of the archive content
+     * @param spillDirectory directory to hold the temporary file if the content exceeds the threshold
+     * @param threshold      maximum number of bytes kept in memory
+     * @return buffer holding the content
+     * @throws IOException if reading the stream or writing the temporary file fails
+     */
+    public static SpillBuffer read(InputStream in, File spillDirectory, long threshold) throws IOException {
+
+        SpillBuffer buffer = new SpillBuffer();
+        CheckedInputStream checkedIn = new CheckedInputStream(in, new CRC32());
+        threshold = Math.min(threshold, Integer.MAX_VALUE - 9);
+        int initialLength = (int) Math.min(COPY_BUFFER_SIZE, threshold + 1);
+        byte[] data = new byte[buffer.reserve(initialLength) ? initialLength : 0];
+        int count = 0;
+        int len;
+
+        try {
+            while (count < data.length && (len = checkedIn.read(data, count, data.length - count)) >= 0) {
+                count += len;
+                if (count == data.length && count <= threshold) {
+                    int newLength = (int) Math.min((long) data.length * 2, threshold + 1);
+                    if (buffer.reserve(newLength - data.length)) {
+                        data = Arrays.copyOf(data, newLength);
+                    }
+                }
+            }
+            if (count == data.length) {
+                // Beyond the threshold or the memory limit of all buffers, keep the content on disk.
+                buffer.spill(checkedIn, data, count, spillDirectory);
+                buffer.releaseMemory();
+                buffer.crc = checkedIn.getChecksum().getValue();
+                return buffer;
+            }
+        } catch (IOException | RuntimeException e) {
+            buffer.close();
+            throw e;
+        }
+        buffer.bytes = data;
+        buffer.length = count;
+        buffer.crc = checkedIn.getChecksum().getValue();
+        return buffer;
+    }
+
+    /**
+     * Take memory for this buffer out of the memory shared by all buffers.
+     *
+     * @param size number of bytes
+     * @return true if the memory was taken, false if the limit would be exceeded
+     */
+    private boolean reserve(long size) {
+
+        long held;
+        do {
+            held = heldBytes.get();
+            if (held + size > MEMORY_LIMIT) {
+                return false;
+            }
+        } while (!heldBytes.compareAndSet(held, held + size));
+        reservedBytes += size;
+        return true;
+    }
+
+    private void releaseMemory() {
+
+        heldBytes.addAndGet(-reservedBytes);
+        reservedBytes = 0;
+    }
+
+    private void spill(InputStream in, byte[] head, int headLength, File spillDirectory) throws IOException {
+
+        file = File.createTempFile("lm-", ".jar", spillDirectory);
+        ownsFile = true;
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(head, 0, headLength);
+            byte[] data = new byte[COPY_BUFFER_SIZE];
+            int len;
+            while ((len = in.read(data)) >= 0) {
+                out.write(data, 0, len);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return a new stream over the content
+     * @throws IOException if the spilled file cannot be opened
+     */
+    public InputStream openStream() throws IOException {
+
+        if (file != null) {
+            return new BufferedInputStream(new FileInputStream(file), COPY_BUFFER_SIZE);
+        }
+        return new ByteArrayInputStream(bytes, 0, length);
+    }
+
+    /**
+     * @return the file holding the content, or null if the content is held in memory
+     */
+    public File getFile() {
+
+        return file;
+    }
+
+    /**
+     * @return CRC32 of the content, computed while the content was read or by reading the wrapped file
+     * @throws IOException if the wrapped file cannot be read
+     */
+    public long getCrc() throws IOException {
+
+        if (crc < 0) {
+            try (CheckedInputStream in = new CheckedInputStream(openStream(), new CRC32())) {
+                byte[] data = new byte[COPY_BUFFER_SIZE];
+                while (in.read(data) >= 0) {
+                    // Read through to compute the checksum.
+                }
+                crc = in.getChecksum().getValue();
+            }
+        }
+        return crc;
+    }
+
+    /**
+     * @return size of the content in bytes
+     */
+    public long size() {
+
+        return file != null ? file.length() : length;
+    }
+
+    @Override
+    public void close() {
+
+        bytes = null;
+        releaseMemory();
+        if (ownsFile && file != null && file.exists() && !file.delete()) {
+            log.warn("Failed to delete the temporary file " + file.getAbsolutePath());
+        }
+    }
+}
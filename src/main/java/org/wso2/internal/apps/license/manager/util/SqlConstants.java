@@ -53,6 +53,14 @@ public class SqlConstants {
             "lib_lic_ID FROM library WHERE lib_Name=? LIMIT 1)";
     public static final String SELECT_LICENSE_FOR_KEY = "SELECT * FROM license WHERE lic_Key=?";
 
+    // Statements of the bulk ingest of a pack, completed with a row of placeholders per library.
+    public static final String SELECT_LIBRARIES_BY_KEYS = "SELECT lib_ID, lib_Name, lib_Version, lib_Type, " +
+            "lib_lic_ID FROM library WHERE (lib_Name, lib_Version, lib_Type) IN (%s) ORDER BY lib_ID";
+    public static final String INSERT_LIBRARY_PRODUCTS = "INSERT IGNORE INTO library_product (lp_lib_ID, " +
+            "lp_prod_ID) VALUES %s";
+    public static final String SELECT_LICENSES_FOR_ANY_LIBS = "SELECT lib.lib_Name, lic.lic_Key FROM library lib " +
+            "LEFT JOIN license lic ON lic.lic_ID = lib.lib_lic_ID WHERE lib.lib_Name IN (%s) ORDER BY lib.lib_ID";
+
     public static final String PRIMARY_KEY_LIBRARY = "LIB_ID";
     public static final String PRIMARY_KEY_PRODUCT = "PROD_ID";
     public static final String PRIMARY_KEY_LICENSE = "lic_Key";
@@ -0,0 +1,381 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.internal.apps.license.manager.connector.PackSourceFactory;
+import org.wso2.internal.apps.license.manager.exception.LicenseManagerConfigurationException;
+import org.wso2.msf4j.util.SystemVariableUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Removes the scratch artifacts of the tasks, such as downloaded and unzipped packs, in the background. The
+ * artifacts are tracked per task and deleted when the task is released. The janitor also keeps the scratch space of
+ * the download path within a quota, by deleting untracked entries which have not been touched for a while, oldest
+ * first. The pack cache, the pack store and the library metadata cache have budgets of their own and are neither
+ * counted nor touched, wherever they are configured. A file which is pinned, for example while it is sent to a
+ * client, is never deleted; if its task is released meanwhile, the file is deleted once the last pin is removed.
+ */
+public class StorageJanitor {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageJanitor.class);
+    private static final long ORPHAN_MIN_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static StorageJanitor storageJanitor = null;
+
+    private final File storageDirectory;
+    private final long quotaBytes;
+    private final List<Path> excludedPaths = new ArrayList<>();
+    private final Map<String, Set<File>> artifactsByTask = new HashMap<>();
+    private final Map<File, Integer> pins = new HashMap<>();
+    private final Set<File> deferredArtifacts = new HashSet<>();
+    private final ScheduledExecutorService executorService;
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+    private final AtomicLong deletedArtifacts = new AtomicLong();
+    private volatile long usedBytes = -1;
+
+    private StorageJanitor(File storageDirectory, long quotaBytes, long sweepSeconds) {
+
+        this.storageDirectory = storageDirectory;
+        this.quotaBytes = quotaBytes;
+        File libraryCacheFile = LibraryMetadataCache.getConfiguredFile();
+        for (File excludedPath : new File[]{PackCache.getConfiguredDirectory(),
+                PackDetailsStore.getConfiguredDirectory(), libraryCacheFile,
+                libraryCacheFile == null ? null : LibraryMetadataCache.getTemporaryFile(libraryCacheFile)}) {
+            if (excludedPath != null) {
+                excludedPaths.add(excludedPath.toPath().toAbsolutePath().normalize());
+            }
+        }
+        executorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "storage-janitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (storageDirectory != null && sweepSeconds > 0) {
+            executorService.scheduleWithFixedDelay(this::enforceQuota, sweepSeconds, sweepSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    public static synchronized StorageJanitor getStorageJanitor() {
+
+        if (storageJanitor == null) {
+            String pathToStorage = SystemVariableUtil.getValue(Constants.FILE_DOWNLOAD_PATH, null);
+            storageJanitor = new StorageJanitor(pathToStorage == null ? null : new File(pathToStorage),
+                    Long.parseLong(SystemVariableUtil.getValue(Constants.STORAGE_QUOTA_BYTES,
+                            String.valueOf(Constants.DEFAULT_STORAGE_QUOTA_BYTES))),
+                    Long.parseLong(SystemVariableUtil.getValue(Constants.STORAGE_SWEEP_SECONDS,
+                            String.valueOf(Constants.DEFAULT_STORAGE_SWEEP_SECONDS))));
+        }
+        return storageJanitor;
+    }
+
+    /**
+     * Track a scratch artifact of a task, to be deleted when the task is released.
+     *
+     * @param taskKey  key of the task, the name of the pack
+     * @param artifact file or folder created for the task
+     */
+    public synchronized void track(String taskKey, File artifact) {
+
+        artifactsByTask.computeIfAbsent(taskKey, key -> new HashSet<>()).add(artifact.getAbsoluteFile());
+    }
+
+    /**
+     * Hand the tracked artifacts of one task over to another, to be deleted when the other task is released.
+     *
+     * @param fromTaskKey key of the task which created the artifacts
+     * @param toTaskKey   key of the task which takes the artifacts over
+     */
+    public synchronized void transfer(String fromTaskKey, String toTaskKey) {
+
+        Set<File> artifacts = artifactsByTask.remove(fromTaskKey);
+        if (artifacts != null) {
+            artifactsByTask.computeIfAbsent(toTaskKey, key -> new HashSet<>()).addAll(artifacts);
+        }
+    }
+
+    /**
+     * Delete the tracked artifacts of a task in the background and check the quota afterwards.
+     *
+     * @param taskKey key of the task, the name of the pack
+     */
+    public void release(String taskKey) {
+
+        Set<File> artifacts;
+        synchronized (this) {
+            artifacts = artifactsByTask.remove(taskKey);
+        }
+        if (artifacts != null) {
+            executorService.execute(() -> {
+                long bytes = 0;
+                for (File artifact : artifacts) {
+                    if (!deferIfPinned(artifact)) {
+                        bytes += delete(artifact);
+                    }
+                }
+                log.info("Reclaimed " + bytes + " bytes from " + artifacts.size() + " artifact(s) of " + taskKey);
+            });
+        }
+        if (storageDirectory != null) {
+            executorService.execute(this::enforceQuota);
+        }
+    }
+
+    /**
+     * Pin a file so that it is not deleted until it is unpinned.
+     *
+     * @param file file in use
+     */
+    public synchronized void pin(File file) {
+
+        pins.merge(file.getAbsoluteFile(), 1, Integer::sum);
+    }
+
+    /**
+     * Remove a pin from a file. A released artifact is deleted in the background once its last pin is removed.
+     *
+     * @param file file no longer in use
+     */
+    public void unpin(File file) {
+
+        File artifact = file.getAbsoluteFile();
+        synchronized (this) {
+            Integer count = pins.get(artifact);
+            if (count == null) {
+                return;
+            }
+            if (count > 1) {
+                pins.put(artifact, count - 1);
+                return;
+            }
+            pins.remove(artifact);
+            if (!deferredArtifacts.remove(artifact)) {
+                return;
+            }
+        }
+        executorService.execute(() -> delete(artifact));
+    }
+
+    private synchronized boolean deferIfPinned(File artifact) {
+
+        if (!pins.containsKey(artifact)) {
+            return false;
+        }
+        deferredArtifacts.add(artifact);
+        return true;
+    }
+
+    /**
+     * Remove a pack from the pack source in the background.
+     *
+     * @param packName name of the pack without the extension
+     */
+    public void removeFromPackSource(String packName) {
+
+        executorService.execute(() -> {
+            try {
+                PackSourceFactory.getPackSource().delete(packName);
+            } catch (LicenseManagerConfigurationException | RuntimeException e) {
+                log.error("Failed to remove the zip file from the pack source. " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Delete untracked entries of the download path, least recently modified first, while the scratch space is
+     * over the quota. Pinned entries and entries modified within the last hour may still be in use and are kept.
+     */
+    private void enforceQuota() {
+
+        File[] entries = storageDirectory.listFiles(entry -> !isExcluded(entry));
+        if (entries == null) {
+            return;
+        }
+        Set<File> trackedArtifacts = new HashSet<>();
+        synchronized (this) {
+            artifactsByTask.values().forEach(trackedArtifacts::addAll);
+            trackedArtifacts.addAll(pins.keySet());
+        }
+
+        long totalBytes = 0;
+        List<File> orphans = new ArrayList<>();
+        long orphanTime = System.currentTimeMillis() - ORPHAN_MIN_AGE_MILLIS;
+        for (File entry : entries) {
+            totalBytes += sizeOf(entry);
+            if (!trackedArtifacts.contains(entry.getAbsoluteFile()) && entry.lastModified() < orphanTime) {
+                orphans.add(entry);
+            }
+        }
+
+        if (totalBytes > quotaBytes) {
+            orphans.sort(Comparator.comparingLong(File::lastModified));
+            long bytes = 0;
+            for (File orphan : orphans) {
+                if (totalBytes <= quotaBytes) {
+                    break;
+                }
+                long deletedBytes = delete(orphan);
+                bytes += deletedBytes;
+                totalBytes -= deletedBytes;
+            }
+            log.info("Reclaimed " + bytes + " bytes of untracked artifacts to keep " +
+                    storageDirectory.getAbsolutePath() + " within the quota of " + quotaBytes + " bytes");
+            if (totalBytes > quotaBytes) {
+                log.warn("The scratch space of " + storageDirectory.getAbsolutePath() + " holds " + totalBytes +
+                        " bytes, over the quota of " + quotaBytes + " bytes, in artifacts which are still in use");
+            }
+        }
+        usedBytes = totalBytes;
+    }
+
+    /**
+     * @return true if the entry is, or holds, one of the caches
+     */
+    private boolean isExcluded(File entry) {
+
+        Path path = entry.toPath().toAbsolutePath().normalize();
+        for (Path excludedPath : excludedPaths) {
+            if (excludedPath.startsWith(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Delete a file or a folder.
+     *
+     * @return number of bytes of the files deleted
+     */
+    private long delete(File artifact) {
+
+        if (!artifact.exists()) {
+            return 0;
+        }
+        AtomicLong bytes = new AtomicLong();
+        try {
+            Files.walkFileTree(artifact.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+
+                    Files.delete(file);
+                    bytes.addAndGet(attributes.size());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+
+                    if (e != null) {
+                        throw e;
+                    }
+                    Files.delete(directory);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            deletedArtifacts.incrementAndGet();
+        } catch (IOException e) {
+            log.error("Failed to delete " + artifact.getAbsolutePath() + ". " + e.getMessage(), e);
+        }
+        reclaimedBytes.addAndGet(bytes.get());
+        return bytes.get();
+    }
+
+    private static long sizeOf(File entry) {
+
+        AtomicLong bytes = new AtomicLong();
+        try {
+            Files.walkFileTree(entry.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+
+                    bytes.addAndGet(attributes.size());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+
+                    // The file may have been removed while the folder was walked.
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.debug("Failed to measure " + entry.getAbsolutePath() + ". " + e.getMessage());
+        }
+        return bytes.get();
+    }
+
+    /**
+     * @return total number of bytes deleted by the janitor
+     */
+    public long getReclaimedBytes() {
+
+        return reclaimedBytes.get();
+    }
+
+    /**
+     * @return number of files and folders deleted by the janitor
+     */
+    public long getDeletedArtifacts() {
+
+        return deletedArtifacts.get();
+    }
+
+    /**
+     * @return bytes of scratch space in use at the last check of the quota, or -1 if it has not been checked yet
+     */
+    public long getUsedBytes() {
+
+        return usedBytes;
+    }
+
+    public long getQuotaBytes() {
+
+        return quotaBytes;
+    }
+
+    /**
+     * @return number of tasks with artifacts which are not released yet
+     */
+    public synchronized int getTrackedTasks() {
+
+        return artifactsByTask.size();
+    }
+}
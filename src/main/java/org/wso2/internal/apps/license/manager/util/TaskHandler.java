@@ -125,5 +125,19 @@ public class TaskHandler {
         return (taskProgress != null);
     }
 
+    /**
+     * @return true if any of the tracked tasks is still running
+     */
+    public static boolean hasRunningTasks() {
+
+        progressTrackerLock.readLock().lock();
+        try {
+            return taskProgressMapByPackName.values().stream()
+                    .anyMatch(taskProgress -> Constants.RUNNING.equals(taskProgress.getStatus()));
+        } finally {
+            progressTrackerLock.readLock().unlock();
+        }
+    }
+
 
 }
@@ -23,18 +23,27 @@ package org.wso2.internal.apps.license.manager.util;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.wso2.internal.apps.license.manager.connector.FtpConnectionManager;
-import org.wso2.internal.apps.license.manager.exception.LicenseManagerConfigurationException;
 import org.wso2.internal.apps.license.manager.exception.LicenseManagerRuntimeException;
+import org.wso2.internal.apps.license.manager.exception.ScanBudgetExceededException;
 import org.wso2.internal.apps.license.manager.service.LicenseManagerServiceEndpoint;
+import org.wso2.msf4j.util.SystemVariableUtil;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.Enumeration;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -44,62 +53,204 @@ import java.util.zip.ZipFile;
 public class ZipHandler {
 
     private static final Logger log = LoggerFactory.getLogger(ZipHandler.class);
+    private static final int EXTRACTION_BUFFER_SIZE = 1024 * 1024;
 
     /**
      * Static function to unzip a file to a given location.
      *
      * @param infile    the location of the zipped file.
      * @param outFolder location where the file should be unzipped.
+     * @return number of bytes extracted
      * @throws LicenseManagerRuntimeException if file extraction fails.
      */
-    public static void unzip(String infile, String outFolder) throws LicenseManagerRuntimeException {
+    public static long unzip(String infile, String outFolder) throws LicenseManagerRuntimeException {
 
-        Enumeration entries;
+        return unzip(infile, outFolder, ScanBudget.unlimited());
+    }
+
+    /**
+     * Unzip a file to a given location within the budget of a scan task.
+     *
+     * @param infile    the location of the zipped file.
+     * @param outFolder location where the file should be unzipped.
+     * @param budget    resource budget of the task
+     * @return number of bytes extracted
+     * @throws ScanBudgetExceededException    if the content exceeds the budget.
+     * @throws LicenseManagerRuntimeException if file extraction fails.
+     */
+    public static long unzip(String infile, String outFolder, ScanBudget budget)
+            throws LicenseManagerRuntimeException {
+
+        int threads = Integer.parseInt(SystemVariableUtil.getValue(Constants.UNZIP_THREADS,
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        return unzip(infile, outFolder, threads, budget);
+    }
+
+    /**
+     * Unzip a file to a given location using the given number of threads. The entries of the central directory are
+     * shared among the threads, largest first, and each thread writes through a file channel with its own buffer.
+     * With a single thread the entries are extracted one after another in the order of the central directory.
+     * The sizes listed in the central directory are checked against the disk space and the budget up front, and
+     * the bytes actually written are accounted for in the budget as they are extracted.
+     *
+     * @param infile    the location of the zipped file.
+     * @param outFolder location where the file should be unzipped.
+     * @param threads   number of threads to extract the entries
+     * @param budget    resource budget of the task
+     * @return number of bytes extracted
+     * @throws ScanBudgetExceededException    if the content exceeds the budget.
+     * @throws LicenseManagerRuntimeException if file extraction fails.
+     */
+    public static long unzip(String infile, String outFolder, int threads, ScanBudget budget)
+            throws LicenseManagerRuntimeException {
+
+        long startTime = System.nanoTime();
+        long extractedBytes;
+
+        // Plan the extraction from the central directory and make sure the content fits on the disk.
+        List<CentralDirectoryReader.Entry> entries = new ArrayList<>();
+        long requiredBytes = 0;
+        for (CentralDirectoryReader.Entry entry : CentralDirectoryReader.read(new File(infile))) {
+            if (!entry.isDirectory()) {
+                entries.add(entry);
+                requiredBytes += entry.getSize();
+            }
+        }
+        budget.addEntries(entries.size());
+        budget.checkPlannedBytes(requiredBytes);
+        long usableBytes = getUsableSpace(new File(outFolder));
+        if (requiredBytes > usableBytes) {
+            throw new LicenseManagerRuntimeException("Not enough disk space to unzip " + infile + ". Required " +
+                    requiredBytes + " bytes, available " + usableBytes + " bytes.");
+        }
 
         try (ZipFile zipFile = new ZipFile(infile)) {
-            entries = zipFile.entries();
-            while (entries.hasMoreElements()) {
-                ZipEntry entry = (ZipEntry) entries.nextElement();
-                File f = new File(outFolder + File.separator + entry.getName());
-                if (!entry.isDirectory()) {
-                    f.getParentFile().mkdirs();
-                    copyInputStream(zipFile.getInputStream(entry), new BufferedOutputStream(new FileOutputStream(f
-                            .getAbsolutePath())));
+            if (threads <= 1) {
+                extractedBytes = 0;
+                byte[] buffer = new byte[EXTRACTION_BUFFER_SIZE];
+                for (CentralDirectoryReader.Entry entry : entries) {
+                    extractedBytes += extractEntry(zipFile, entry.getName(), outFolder, buffer, budget);
                 }
+            } else {
+                extractedBytes = extractInParallel(zipFile, entries, outFolder, threads, budget);
             }
         } catch (IOException e) {
+            if (e.getCause() instanceof ScanBudgetExceededException) {
+                throw (ScanBudgetExceededException) e.getCause();
+            }
             throw new LicenseManagerRuntimeException("Failed to unzip the file. ", e);
         }
+
+        long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        log.info("Unzipped " + extractedBytes + " bytes of " + infile + " in " + elapsedMillis + " ms using " +
+                Math.max(1, threads) + " thread(s) (" + (extractedBytes * 1000 / elapsedMillis) + " bytes/s)");
+        return extractedBytes;
     }
 
-    private static void copyInputStream(InputStream in, OutputStream out) throws IOException {
+    /**
+     * Estimate the disk space needed to unzip a file, from its central directory.
+     *
+     * @param infile the location of the zipped file.
+     * @return total uncompressed size of the entries in bytes
+     * @throws LicenseManagerRuntimeException if the central directory cannot be read.
+     */
+    public static long getUncompressedSize(String infile) throws LicenseManagerRuntimeException {
+
+        long size = 0;
+        for (CentralDirectoryReader.Entry entry : CentralDirectoryReader.read(new File(infile))) {
+            size += entry.getSize();
+        }
+        return size;
+    }
 
-        byte[] buffer = new byte[1024];
-        int len;
+    private static long getUsableSpace(File folder) {
 
-        while ((len = in.read(buffer)) >= 0) {
-            out.write(buffer, 0, len);
+        File existingFolder = folder.getAbsoluteFile();
+        while (existingFolder != null && !existingFolder.exists()) {
+            existingFolder = existingFolder.getParentFile();
         }
-        in.close();
-        out.close();
+        return (existingFolder == null) ? Long.MAX_VALUE : existingFolder.getUsableSpace();
     }
 
-    /**
-     * Remove files from local file storage and FTP server after generating the license text.
-     *
-     * @param fileName product name for which the licenses were generated
-     */
-    public static void cleanFileStorage(String fileName, String localFilePath) {
+    private static long extractInParallel(ZipFile zipFile, List<CentralDirectoryReader.Entry> entries,
+                                          String outFolder, int threads, ScanBudget budget)
+            throws IOException, LicenseManagerRuntimeException {
+
+        // Hand out the largest entries first so that no thread is left with a large entry at the end.
+        Queue<CentralDirectoryReader.Entry> pendingEntries = new ConcurrentLinkedQueue<>();
+        entries.stream().sorted(Comparator.comparingLong(CentralDirectoryReader.Entry::getSize).reversed())
+                .forEach(pendingEntries::add);
 
-        deleteFolder(localFilePath + fileName + ".zip");
-        deleteFolder(localFilePath + fileName);
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        List<Future<Long>> results = new ArrayList<>();
         try {
-            FtpConnectionManager ftpConnectionManager = FtpConnectionManager.getFtpConnectionManager();
-            ftpConnectionManager.deleteFileFromFtpServer(fileName);
-            ftpConnectionManager.closeSftpChannel();
-        } catch (LicenseManagerConfigurationException e) {
-            log.error("Failed to remove the zip file from the FTP server. " + e.getMessage(), e);
+            for (int i = 0; i < threads; i++) {
+                results.add(executorService.submit(() -> {
+                    long bytes = 0;
+                    byte[] buffer = new byte[EXTRACTION_BUFFER_SIZE];
+                    for (CentralDirectoryReader.Entry entry = pendingEntries.poll(); entry != null;
+                         entry = pendingEntries.poll()) {
+                        bytes += extractEntry(zipFile, entry.getName(), outFolder, buffer, budget);
+                    }
+                    return bytes;
+                }));
+            }
+
+            long extractedBytes = 0;
+            for (Future<Long> result : results) {
+                extractedBytes += result.get();
+            }
+            return extractedBytes;
+        } catch (ExecutionException e) {
+            pendingEntries.clear();
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new LicenseManagerRuntimeException("Failed to unzip the file. ", e.getCause());
+        } catch (InterruptedException e) {
+            pendingEntries.clear();
+            Thread.currentThread().interrupt();
+            throw new LicenseManagerRuntimeException("Unzipping the file was interrupted. ", e);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private static long extractEntry(ZipFile zipFile, String entryName, String outFolder, byte[] buffer,
+                                     ScanBudget budget) throws IOException {
+
+        ZipEntry entry = zipFile.getEntry(entryName);
+        if (entry == null) {
+            throw new IOException("Entry " + entryName + " is not found in the zip file");
+        }
+        File f = new File(outFolder + File.separator + entryName);
+        f.getParentFile().mkdirs();
+
+        long bytes = 0;
+        try (InputStream in = budget.track(zipFile.getInputStream(entry));
+             FileChannel out = FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+            int len;
+            while ((len = readFully(in, buffer)) > 0) {
+                byteBuffer.clear().limit(len);
+                while (byteBuffer.hasRemaining()) {
+                    out.write(byteBuffer);
+                }
+                bytes += len;
+            }
+        }
+        return bytes;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+
+        int count = 0;
+        int len;
+        while (count < buffer.length && (len = in.read(buffer, count, buffer.length - count)) >= 0) {
+            count += len;
         }
+        return count;
     }
 
     /**
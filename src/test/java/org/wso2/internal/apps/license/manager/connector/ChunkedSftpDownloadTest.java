@@ -0,0 +1,242 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.connector;
+
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.sftp.server.FileHandle;
+import org.apache.sshd.sftp.server.SftpEventListener;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.internal.apps.license.manager.exception.LicenseManagerConfigurationException;
+import org.wso2.internal.apps.license.manager.util.Constants;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link ChunkedSftpDownload} against an embedded SFTP server.
+ */
+public class ChunkedSftpDownloadTest {
+
+    private static final String PACK_NAME = "wso2am-2.6.0.zip";
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int CHANNELS = 4;
+
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private volatile long failingOffset = -1;
+    private SshServer sshServer;
+    private Path serverRoot;
+    private Path hostKey;
+    private Path downloadDirectory;
+    private byte[] pack;
+
+    @BeforeClass
+    public void startServer() throws IOException {
+
+        serverRoot = Files.createTempDirectory("sftp-root");
+        pack = new byte[20 * CHUNK_SIZE + 123];
+        new Random(42).nextBytes(pack);
+        Files.write(serverRoot.resolve(PACK_NAME), pack);
+
+        SftpSubsystemFactory sftpSubsystemFactory = new SftpSubsystemFactory();
+        sftpSubsystemFactory.addSftpEventListener(new SftpEventListener() {
+
+            @Override
+            public void reading(ServerSession session, String remoteHandle, FileHandle localHandle, long offset,
+                                byte[] data, int dataOffset, int dataLen) throws IOException {
+
+                // Fail the reads of one range as many times as asked.
+                long start = failingOffset;
+                if (start >= 0 && offset >= start && offset < start + CHUNK_SIZE &&
+                        failuresLeft.getAndDecrement() > 0) {
+                    throw new IOException("Injected failure at " + offset);
+                }
+            }
+        });
+
+        sshServer = SshServer.setUpDefaultServer();
+        sshServer.setPort(0);
+        hostKey = serverRoot.resolveSibling(serverRoot.getFileName() + ".hostkey");
+        sshServer.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(hostKey));
+        sshServer.setPasswordAuthenticator((username, password, session) -> true);
+        sshServer.setSubsystemFactories(Collections.singletonList(sftpSubsystemFactory));
+        sshServer.setFileSystemFactory(new VirtualFileSystemFactory(serverRoot));
+        sshServer.start();
+
+        System.setProperty(Constants.FTP_HOST, "localhost");
+        System.setProperty(Constants.FTP_PORT, String.valueOf(sshServer.getPort()));
+        System.setProperty(Constants.FTP_USERNAME, "user");
+        System.setProperty(Constants.FTP_PASSWORD, "password");
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void stopServer() throws IOException {
+
+        if (sshServer != null) {
+            sshServer.stop(true);
+        }
+        Files.deleteIfExists(serverRoot.resolve(PACK_NAME));
+        Files.deleteIfExists(serverRoot);
+        Files.deleteIfExists(hostKey);
+    }
+
+    @BeforeMethod
+    public void createDownloadDirectory() throws IOException {
+
+        downloadDirectory = Files.createTempDirectory("sftp-download");
+        failingOffset = -1;
+        failuresLeft.set(0);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void deleteDownloadDirectory() {
+
+        File[] files = downloadDirectory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Assert.assertTrue(file.delete());
+            }
+        }
+        Assert.assertTrue(downloadDirectory.toFile().delete());
+    }
+
+    @Test
+    public void testDownloadInRanges() throws Exception {
+
+        File target = download();
+
+        Assert.assertTrue(Arrays.equals(Files.readAllBytes(target.toPath()), pack));
+        Assert.assertFalse(partialFile(target).exists());
+        Assert.assertFalse(partsFile(target).exists());
+    }
+
+    @Test
+    public void testRetryFailedRange() throws Exception {
+
+        failingOffset = 5L * CHUNK_SIZE;
+        failuresLeft.set(2);
+
+        File target = download();
+
+        Assert.assertTrue(Arrays.equals(Files.readAllBytes(target.toPath()), pack));
+    }
+
+    @Test
+    public void testFailedRangeIsNotMovedIntoPlace() throws Exception {
+
+        File target = new File(downloadDirectory.toFile(), PACK_NAME);
+        failingOffset = 7L * CHUNK_SIZE;
+        failuresLeft.set(Integer.MAX_VALUE);
+
+        try {
+            download();
+            Assert.fail("The download must fail when a range cannot be downloaded");
+        } catch (LicenseManagerConfigurationException e) {
+            Assert.assertFalse(target.exists());
+            Assert.assertTrue(partialFile(target).exists());
+            Assert.assertFalse(readParts(target).contains("\n7;"));
+        }
+
+        // The next attempt resumes and downloads the missing range.
+        failuresLeft.set(0);
+        download();
+
+        Assert.assertTrue(Arrays.equals(Files.readAllBytes(target.toPath()), pack));
+        Assert.assertFalse(partsFile(target).exists());
+    }
+
+    @Test
+    public void testResumeFromCompletedRanges() throws Exception {
+
+        File target = new File(downloadDirectory.toFile(), PACK_NAME);
+        // Ranges recorded as complete are not downloaded again, so their marker bytes stay in the file.
+        byte[] partial = new byte[pack.length];
+        Arrays.fill(partial, 0, 3 * CHUNK_SIZE, (byte) 7);
+        Files.write(partialFile(target).toPath(), partial);
+        Files.write(partsFile(target).toPath(), (header() + "\n0;\n1;\n2;\n3").getBytes(StandardCharsets.UTF_8));
+
+        download();
+
+        byte[] expected = pack.clone();
+        Arrays.fill(expected, 0, 3 * CHUNK_SIZE, (byte) 7);
+        Assert.assertTrue(Arrays.equals(Files.readAllBytes(target.toPath()), expected));
+    }
+
+    @Test
+    public void testDownloadAgainWhenRemoteFileChanged() throws Exception {
+
+        File target = new File(downloadDirectory.toFile(), PACK_NAME);
+        byte[] partial = new byte[pack.length];
+        Arrays.fill(partial, (byte) 7);
+        Files.write(partialFile(target).toPath(), partial);
+        Files.write(partsFile(target).toPath(), ((pack.length - 1) + " 0 " + CHUNK_SIZE + "\n0;\n1;\n")
+                .getBytes(StandardCharsets.UTF_8));
+
+        download();
+
+        Assert.assertTrue(Arrays.equals(Files.readAllBytes(target.toPath()), pack));
+    }
+
+    private File download() throws LicenseManagerConfigurationException {
+
+        File target = new File(downloadDirectory.toFile(), PACK_NAME);
+        try (FtpConnectionManager ftpConnectionManager = FtpConnectionManager.getFtpConnectionManager()) {
+            new ChunkedSftpDownload(ftpConnectionManager, "/" + PACK_NAME, target, CHUNK_SIZE, CHANNELS).download();
+        }
+        return target;
+    }
+
+    private String header() throws IOException {
+
+        long modifiedTime = Files.getLastModifiedTime(serverRoot.resolve(PACK_NAME)).toMillis() / 1000;
+        return pack.length + " " + modifiedTime + " " + CHUNK_SIZE;
+    }
+
+    private String readParts(File target) throws IOException {
+
+        return new String(Files.readAllBytes(partsFile(target).toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static File partialFile(File target) {
+
+        return new File(target.getPath() + ".part");
+    }
+
+    private static File partsFile(File target) {
+
+        return new File(target.getPath() + ".parts");
+    }
+}
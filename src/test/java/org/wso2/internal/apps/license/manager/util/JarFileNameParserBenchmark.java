@@ -0,0 +1,93 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link JarFileNameParser} with the loops it replaced, which scanned each file name forwards and created
+ * a new string for every separator found. It is not run by the unit tests; run the main method to measure it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JarFileNameParserBenchmark {
+
+    private final String[] fileNames = {
+            "commons-lang-2.6.jar",
+            "axis2-transport-1.6.1-wso2v38.jar",
+            "org.wso2.carbon.identity.application.authentication.framework_5.11.148.jar",
+            "org.eclipse.osgi_3.10.2.v20150203-1939.jar",
+            "license-manager-1.0-SNAPSHOT.jar",
+            "addressing-1.6.1-wso2v38.mar",
+            "tools.jar",
+    };
+
+    public static void main(String[] args) throws RunnerException {
+
+        Options options = new OptionsBuilder()
+                .include(JarFileNameParserBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+    @Benchmark
+    public void parser(Blackhole blackhole) {
+
+        for (String fileName : fileNames) {
+            int extensionIndex = JarFileNameParser.getExtensionIndex(fileName);
+            int splitIndex = JarFileNameParser.getSplitIndex(fileName, extensionIndex);
+            if (splitIndex < 0) {
+                blackhole.consume(fileName.substring(0, extensionIndex));
+            } else {
+                blackhole.consume(fileName.substring(0, splitIndex));
+                blackhole.consume(fileName.substring(splitIndex + 1, extensionIndex));
+            }
+        }
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole) {
+
+        for (String fileName : fileNames) {
+            blackhole.consume(LegacyJarFileNameParser.getName(fileName));
+            blackhole.consume(LegacyJarFileNameParser.getVersion(fileName));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.util;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for {@link JarFileNameParser}. The parser must split file names exactly as the loops it replaced did, which
+ * kept the last '-' or '_' followed by a digit, 'S' or 'r'.
+ */
+public class JarFileNameParserTest {
+
+    @DataProvider(name = "versionedNames")
+    public Object[][] versionedNames() {
+
+        return new Object[][]{
+                {"commons-lang-2.6.jar", "commons-lang", "2.6"},
+                {"gson-2.3.1.jar", "gson", "2.3.1"},
+                {"axis2-transport-1.6.1-wso2v38.jar", "axis2-transport", "1.6.1-wso2v38"},
+                {"jackson-core-2.9.0.pr1.jar", "jackson-core", "2.9.0.pr1"},
+                {"netty-all-4.1.34.Final.jar", "netty-all", "4.1.34.Final"},
+                {"license-manager-1.0-SNAPSHOT.jar", "license-manager-1.0", "SNAPSHOT"},
+                {"org.wso2.carbon.core_4.4.9.jar", "org.wso2.carbon.core", "4.4.9"},
+                {"org.eclipse.osgi_3.10.2.v20150203-1939.jar", "org.eclipse.osgi_3.10.2.v20150203", "1939"},
+                {"guava_r09.jar", "guava", "r09"},
+                {"addressing-1.6.1-wso2v38.mar", "addressing", "1.6.1-wso2v38"},
+        };
+    }
+
+    @DataProvider(name = "unversionedNames")
+    public Object[][] unversionedNames() {
+
+        return new Object[][]{
+                {"tools.jar"},
+                {"commons-lang.jar"},
+                {"jaxb_api.jar"},
+                {"rampart.mar"},
+                {"a.jar"},
+                {".jar"},
+        };
+    }
+
+    @Test(dataProvider = "versionedNames")
+    public void testSplitVersionedName(String fileName, String name, String version) {
+
+        int extensionIndex = JarFileNameParser.getExtensionIndex(fileName);
+        int splitIndex = JarFileNameParser.getSplitIndex(fileName, extensionIndex);
+
+        Assert.assertEquals(extensionIndex, fileName.length() - ".jar".length());
+        Assert.assertEquals(fileName.substring(0, splitIndex), name);
+        Assert.assertEquals(fileName.substring(splitIndex + 1, extensionIndex), version);
+        Assert.assertEquals(JarFileNameParser.getSplitIndex(fileName), splitIndex);
+    }
+
+    @Test(dataProvider = "unversionedNames")
+    public void testSplitUnversionedName(String fileName) {
+
+        Assert.assertEquals(JarFileNameParser.getSplitIndex(fileName), -1);
+    }
+
+    @Test(dataProvider = "versionedNames")
+    public void testMatchesLegacySplit(String fileName, String name, String version) {
+
+        int extensionIndex = JarFileNameParser.getExtensionIndex(fileName);
+        int splitIndex = JarFileNameParser.getSplitIndex(fileName, extensionIndex);
+
+        Assert.assertEquals(fileName.substring(0, splitIndex), LegacyJarFileNameParser.getName(fileName));
+        Assert.assertEquals(fileName.substring(splitIndex + 1, extensionIndex),
+                LegacyJarFileNameParser.getVersion(fileName));
+    }
+
+    @Test
+    public void testExtensionIndex() {
+
+        Assert.assertEquals(JarFileNameParser.getExtensionIndex("gson-2.3.1.jar"), 10);
+        Assert.assertEquals(JarFileNameParser.getExtensionIndex("addressing-1.6.1.mar"), 16);
+        Assert.assertEquals(JarFileNameParser.getExtensionIndex("gson-2.3.1.zip"), 14);
+        Assert.assertEquals(JarFileNameParser.getExtensionIndex("gson-2.3.1.JAR"), 14);
+        Assert.assertEquals(JarFileNameParser.getExtensionIndex("jar"), 3);
+        Assert.assertEquals(JarFileNameParser.getExtensionIndex(""), 0);
+    }
+
+    @Test
+    public void testSplitIgnoresSeparatorBeforeExtension() {
+
+        // A separator right before the extension has nothing after it, so it does not start a version.
+        Assert.assertEquals(JarFileNameParser.getSplitIndex("commons-lang-.jar"), -1);
+        Assert.assertEquals(JarFileNameParser.getSplitIndex("commons-lang-2.6-.jar"), 12);
+    }
+
+    @Test
+    public void testSplitWithinBounds() {
+
+        String fileName = "commons-lang-2.6.jar-1.0";
+
+        Assert.assertEquals(JarFileNameParser.getSplitIndex(fileName, 16), 12);
+        Assert.assertEquals(JarFileNameParser.getSplitIndex(fileName, 0), -1);
+    }
+}
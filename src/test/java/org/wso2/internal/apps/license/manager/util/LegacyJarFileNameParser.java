@@ -0,0 +1,69 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.util;
+
+/**
+ * The loops which {@link JarFileNameParser} replaced, kept to check and to measure the parser against. Each scans
+ * the file name forwards and creates a new string for every separator found.
+ */
+final class LegacyJarFileNameParser {
+
+    /**
+     * Hide the constructor.
+     */
+    private LegacyJarFileNameParser() {
+
+    }
+
+    /**
+     * The name extraction which {@link JarFileNameParser} replaced.
+     */
+    static String getName(String name) {
+
+        String extractedName = null;
+        for (int i = 0; i < name.length(); i++) {
+            if ((name.charAt(i) == '-' || name.charAt(i) == '_') &&
+                    (Character.isDigit(name.charAt(i + 1)) || name.charAt(i + 1) == 'S' ||
+                            name.charAt(i + 1) == 'r')) {
+                extractedName = name.substring(0, i);
+            }
+        }
+        return extractedName;
+    }
+
+    /**
+     * The version extraction which {@link JarFileNameParser} replaced.
+     */
+    static String getVersion(String name) {
+
+        String extractedVersion = null;
+        name = name.replace(".jar", "");
+        name = name.replace(".mar", "");
+        for (int i = 0; i < name.length(); i++) {
+            if ((name.charAt(i) == '-' || name.charAt(i) == '_') &&
+                    (Character.isDigit(name.charAt(i + 1)) || name.charAt(i + 1) == 'S' ||
+                            name.charAt(i + 1) == 'r')) {
+                extractedVersion = name.substring(i + 1, name.length());
+            }
+        }
+        return extractedVersion;
+    }
+}
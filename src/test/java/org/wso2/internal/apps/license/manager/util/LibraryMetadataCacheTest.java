@@ -0,0 +1,96 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+
+/**
+ * Tests for {@link LibraryMetadataCache}. A jar is only restored from the cache together with all of its inner jars,
+ * so a lookup must never return a tree with an inner jar missing, even if the jar is evicted meanwhile.
+ */
+public class LibraryMetadataCacheTest {
+
+    private static LibraryMetadataCache.CachedLibrary library(String fileName, String... innerChecksums) {
+
+        LibraryMetadataCache.CachedLibrary library = new LibraryMetadataCache.CachedLibrary();
+        library.setFileName(fileName);
+        library.setHasManifest(true);
+        for (int i = 0; i < innerChecksums.length; i++) {
+            library.getInnerJars().put("lib/inner-" + i + ".jar", innerChecksums[i]);
+        }
+        return library;
+    }
+
+    @Test
+    public void testLookupCopiesTheWholeTree() {
+
+        LibraryMetadataCache cache = new LibraryMetadataCache(null, 10);
+        cache.put("inner-1", library("inner-1.jar"));
+        cache.put("inner-2", library("inner-2.jar"));
+        cache.put("parent", library("parent.jar", "inner-1", "inner-2"));
+
+        Map<String, LibraryMetadataCache.CachedLibrary> tree = cache.lookup("parent");
+
+        Assert.assertNotNull(tree);
+        Assert.assertEquals(tree.keySet().size(), 3);
+        Assert.assertEquals(tree.get("inner-2").getFileName(), "inner-2.jar");
+        Assert.assertEquals(cache.getHits(), 1);
+    }
+
+    @Test
+    public void testInnerJarEvictedAfterLookup() {
+
+        LibraryMetadataCache cache = new LibraryMetadataCache(null, 3);
+        cache.put("inner-1", library("inner-1.jar"));
+        cache.put("inner-2", library("inner-2.jar"));
+        cache.put("parent", library("parent.jar", "inner-1", "inner-2"));
+        Map<String, LibraryMetadataCache.CachedLibrary> tree = cache.lookup("parent");
+
+        // A concurrent scan caches other jars and evicts the parent and the first inner jar.
+        cache.put("other-1", library("other-1.jar"));
+        cache.put("other-2", library("other-2.jar"));
+        Assert.assertFalse(cache.isComplete("inner-1"));
+
+        // The copied tree can still be restored in full.
+        Assert.assertNotNull(tree);
+        for (String innerChecksum : tree.get("parent").getInnerJars().values()) {
+            Assert.assertNotNull(tree.get(innerChecksum), innerChecksum);
+        }
+    }
+
+    @Test
+    public void testInnerJarEvictedBeforeLookup() {
+
+        LibraryMetadataCache cache = new LibraryMetadataCache(null, 3);
+        cache.put("inner-1", library("inner-1.jar"));
+        cache.put("parent", library("parent.jar", "inner-1", "inner-2"));
+        cache.put("inner-2", library("inner-2.jar"));
+        cache.put("other", library("other.jar"));
+
+        // The first inner jar was the least recently used, so the parent has to be scanned again.
+        Assert.assertNull(cache.lookup("parent"));
+        Assert.assertEquals(cache.getMisses(), 1);
+        Assert.assertNotNull(cache.lookup("inner-2"));
+    }
+}
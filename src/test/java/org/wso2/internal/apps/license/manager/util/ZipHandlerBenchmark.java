@@ -0,0 +1,144 @@
+/*
+ *
+ *  * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *  *
+ *  * WSO2 Inc. licenses this file to you under the Apache License,
+ *  * Version 2.0 (the "License"); you may not use this file except
+ *  * in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing,
+ *  * software distributed under the License is distributed on an
+ *  * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  * KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations
+ *  * under the License.
+ *
+ */
+
+package org.wso2.internal.apps.license.manager.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.wso2.internal.apps.license.manager.exception.LicenseManagerRuntimeException;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Compares unzipping a pack with a single thread, entry after entry in the order of the central directory, against
+ * unzipping it with several threads. The pack is generated once for each run, with compressed jars of mixed sizes
+ * and small text files, and the extracted folder is deleted after every unzip. It is not run by the unit tests; run
+ * the main method to measure it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZipHandlerBenchmark {
+
+    private static final int JAR_COUNT = 500;
+    private static final int LARGE_JAR_COUNT = 8;
+    private static final int TEXT_FILE_COUNT = 200;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private File workDirectory;
+    private File pack;
+    private File outFolder;
+
+    public static void main(String[] args) throws RunnerException {
+
+        Options options = new OptionsBuilder()
+                .include(ZipHandlerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+    @Setup(Level.Trial)
+    public void createPack() throws IOException {
+
+        workDirectory = Files.createTempDirectory("zip-handler-benchmark").toFile();
+        pack = new File(workDirectory, "pack.zip");
+        outFolder = new File(workDirectory, "extracted");
+
+        Random random = new Random(42);
+        try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(pack)))) {
+            // Jars are compressed already, so their content is random.
+            for (int i = 0; i < JAR_COUNT; i++) {
+                addEntry(out, "pack/repository/components/plugins/library-" + i + ".jar",
+                        randomBytes(random, 16 * 1024 + random.nextInt(240 * 1024)));
+            }
+            for (int i = 0; i < LARGE_JAR_COUNT; i++) {
+                addEntry(out, "pack/lib/large-library-" + i + ".jar", randomBytes(random, 4 * 1024 * 1024));
+            }
+            StringBuilder text = new StringBuilder();
+            while (text.length() < 4 * 1024) {
+                text.append("key.").append(random.nextInt(100)).append("=value\n");
+            }
+            for (int i = 0; i < TEXT_FILE_COUNT; i++) {
+                addEntry(out, "pack/conf/file-" + i + ".properties", text.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteExtracted() {
+
+        ZipHandler.deleteFolder(outFolder.getPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void deletePack() {
+
+        ZipHandler.deleteFolder(workDirectory.getPath());
+    }
+
+    @Benchmark
+    public long unzip() throws LicenseManagerRuntimeException {
+
+        return ZipHandler.unzip(pack.getPath(), outFolder.getPath(), threads, ScanBudget.unlimited());
+    }
+
+    private static byte[] randomBytes(Random random, int size) {
+
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static void addEntry(ZipOutputStream out, String name, byte[] content) throws IOException {
+
+        out.putNextEntry(new ZipEntry(name));
+        out.write(content);
+        out.closeEntry();
+    }
+}